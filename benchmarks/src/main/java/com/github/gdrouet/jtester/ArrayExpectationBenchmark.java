@@ -0,0 +1,136 @@
+package com.github.gdrouet.jtester;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Measures the expectations parsing arrays from the output, from 10 to one million elements. Canonical arrays contain
+ * non negative integers only, which lets {@link CombinationOfTwoArraysExpectation} compare the values instead of the
+ * strings.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ArrayExpectationBenchmark {
+
+    /**
+     * Matches one array.
+     */
+    private static final String ARRAY = "\\[(.*?)\\]";
+
+    /**
+     * Matches the two arrays and their combination.
+     */
+    private static final String COMBINATION = ARRAY + " \\+ " + ARRAY + " = " + ARRAY;
+
+    /**
+     * The number of elements of each array.
+     */
+    @Param({ "10", "1000", "100000", "1000000" })
+    private int elements;
+
+    /**
+     * Only non negative integers.
+     */
+    @Param({ "true", "false" })
+    private boolean canonical;
+
+    /**
+     * Output of a combination.
+     */
+    private String combination;
+
+    /**
+     * Output of a sorted array.
+     */
+    private String sorted;
+
+    /**
+     * Output of an array in random order.
+     */
+    private String random;
+
+    /**
+     * Checks a combination.
+     */
+    private Expectation combinationExpectation;
+
+    /**
+     * Checks the order of an array.
+     */
+    private Expectation incrementalExpectation;
+
+    /**
+     * Checks the disorder of an array.
+     */
+    private Expectation randomOrderExpectation;
+
+    /**
+     * <p>
+     * Generates the outputs.
+     * </p>
+     */
+    @Setup
+    public void setup() {
+        final String first = Corpus.array(elements, canonical, false, 1);
+        final String second = Corpus.array(elements, canonical, false, 2);
+        combination = "[" + first + "] + [" + second + "] = [" + first + ", " + second + "]";
+        sorted = "[" + Corpus.array(elements, canonical, true, 3) + "]";
+        random = "[" + Corpus.array(elements, canonical, false, 4) + "]";
+        combinationExpectation = new CombinationOfTwoArraysExpectation(Corpus.CLASS);
+        incrementalExpectation = new IncrementalArrayExpectation(Corpus.CLASS);
+        randomOrderExpectation = new RandomOrderArrayExpectation(Corpus.CLASS);
+    }
+
+    /**
+     * <p>
+     * Checks the combination of two arrays.
+     * </p>
+     *
+     * @return the result
+     */
+    @Benchmark
+    public boolean combination() {
+        return combinationExpectation.isResultExpected(COMBINATION, combination);
+    }
+
+    /**
+     * <p>
+     * Checks that an array is sorted.
+     * </p>
+     *
+     * @return the result
+     */
+    @Benchmark
+    public boolean incremental() {
+        return incrementalExpectation.isResultExpected(ARRAY, sorted);
+    }
+
+    /**
+     * <p>
+     * Checks that an array is not a sequence.
+     * </p>
+     *
+     * @return the result
+     */
+    @Benchmark
+    public boolean randomOrder() {
+        return randomOrderExpectation.isResultExpected(ARRAY, random);
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.gdrouet.jtester;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>
+ * Runs the benchmarks selected by the JMH command line options. Unless the result format or file is given on the
+ * command line, results are written in JSON to {@link #RESULT} so they can be compared between versions.
+ * </p>
+ */
+public final class BenchmarkMain {
+
+    /**
+     * Default result file.
+     */
+    public static final String RESULT = "jmh-result.json";
+
+    /**
+     * <p>
+     * Prevent instantiation.
+     * </p>
+     */
+    private BenchmarkMain() {
+    }
+
+    /**
+     * <p>
+     * Runs the benchmarks.
+     * </p>
+     *
+     * @param args the JMH command line options
+     * @throws CommandLineOptionException if the options can't be parsed
+     * @throws RunnerException if a benchmark fails
+     */
+    public static void main(final String[] args) throws CommandLineOptionException, RunnerException {
+        final CommandLineOptions cli = new CommandLineOptions(args);
+        final ChainedOptionsBuilder options = new OptionsBuilder().parent(cli);
+
+        if (!cli.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+
+        if (!cli.getResult().hasValue()) {
+            options.result(RESULT);
+        }
+
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,275 @@
+package com.github.gdrouet.jtester;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * <p>
+ * Generates synthetic submissions and outputs for the benchmarks. Each generated file to test declares an "Adder"
+ * class whose "add" method returns the sum of its arguments, so every shape is graded as a correct submission by the
+ * environment written by {@link #write(File, String)}. Generation is deterministic for a given size.
+ * </p>
+ */
+public final class Corpus {
+
+    /**
+     * <p>
+     * The shape of a generated file to test.
+     * </p>
+     */
+    public enum Shape {
+
+        /**
+         * A few lines, like most submissions.
+         */
+        SMALL,
+
+        /**
+         * One member per size unit, with comments, literals and debug statements removed by the rewriter.
+         */
+        LARGE,
+
+        /**
+         * A single line mixing comments, literals and statements which look like the rewritten ones, with deeply
+         * nested expressions.
+         */
+        PATHOLOGICAL
+    }
+
+    /**
+     * Name of the student of the generated submission.
+     */
+    public static final String STUDENT = "Alice";
+
+    /**
+     * Name of the class to test.
+     */
+    public static final String CLASS = "Adder";
+
+    /**
+     * Name of the test executor file.
+     */
+    public static final String EXECUTOR = "Main.java";
+
+    /**
+     * Step of the generated registration.
+     */
+    public static final String STEP = "bench";
+
+    /**
+     * Maximum nesting of the pathological expressions, javac fails with deeper expressions.
+     */
+    private static final int MAX_DEPTH = 200;
+
+    /**
+     * <p>
+     * Prevent instantiation.
+     * </p>
+     */
+    private Corpus() {
+    }
+
+    /**
+     * <p>
+     * Generates a file to test described by the name of its shape, followed by a dash and the number of members for
+     * the large and pathological shapes, e.g. "SMALL" or "LARGE-100". Benchmarks use a single parameter with such
+     * names rather than crossing the shapes with the sizes, the size being meaningless for the small shape.
+     * </p>
+     *
+     * @param corpus the description of the file
+     * @return the source
+     */
+    public static String source(final String corpus) {
+        final int sep = corpus.indexOf('-');
+        return sep == -1 ? source(Shape.valueOf(corpus), 0)
+                : source(Shape.valueOf(corpus.substring(0, sep)), Integer.parseInt(corpus.substring(sep + 1)));
+    }
+
+    /**
+     * <p>
+     * Generates a file to test.
+     * </p>
+     *
+     * @param shape the shape
+     * @param size the number of members of the large and pathological shapes
+     * @return the source
+     */
+    public static String source(final Shape shape, final int size) {
+        final StringBuilder retval = new StringBuilder();
+        retval.append("package student;\n");
+        retval.append("import java.util.List;\n");
+        retval.append("import org.junit.Test;\n");
+
+        switch (shape) {
+            case SMALL:
+                retval.append("// Adds two integers\n");
+                retval.append("public class Adder {\n");
+                retval.append("    public int add(int a, int b) {\n");
+                retval.append("        System.out.println(\"debug\");\n");
+                retval.append("        return a + b;\n");
+                retval.append("    }\n");
+                retval.append("}\n");
+                break;
+            case LARGE:
+                retval.append("public class Adder {\n");
+
+                for (int i = 0; i < size; i++) {
+                    retval.append("    /**\n     * Member ").append(i).append(", see \"Adder\".\n     */\n");
+                    retval.append("    private int value").append(i).append(" = ").append(i).append(";\n");
+                    retval.append("    public int get").append(i).append("() {\n");
+                    retval.append("        System.out.println(\"value").append(i).append(" = \" + value").append(i).append(");\n");
+                    retval.append("        return value").append(i).append(" + 0x").append(Integer.toHexString(i)).append("L > 0 ? 1 : 0;\n");
+                    retval.append("    }\n");
+                }
+
+                retval.append("    public int add(int a, int b) { return a + b; }\n");
+                retval.append("}\n");
+                break;
+            case PATHOLOGICAL:
+                retval.append("public class Adder {");
+                final int depth = Math.min(size, MAX_DEPTH);
+
+                for (int i = 0; i < size; i++) {
+                    retval.append("/* package import public class Adder; */");
+                    retval.append("String s").append(i).append(" = \"/* System.out.println(\\\"\\\"); // \";");
+                    retval.append("char c").append(i).append(" = '\\'';");
+                    retval.append("int m").append(i).append("() { System.out.println(((\";\")));");
+                    retval.append(" return ");
+
+                    for (int d = 0; d < depth; d++) {
+                        retval.append('(');
+                    }
+
+                    retval.append(i);
+
+                    for (int d = 0; d < depth; d++) {
+                        retval.append(" + 1)");
+                    }
+
+                    retval.append("; }");
+                }
+
+                retval.append("public int add(int a, int b) { return a + b; } }");
+                break;
+            default:
+                throw new IllegalArgumentException(shape.name());
+        }
+
+        return retval.toString();
+    }
+
+    /**
+     * <p>
+     * Writes a test, expectation and environment directory with one submission of the given shape.
+     * </p>
+     *
+     * @param root the directory containing the generated directories
+     * @param corpus the description of the file to test, see {@link #source(String)}
+     * @return the file to test
+     * @throws IOException if a file can't be written
+     */
+    public static File write(final File root, final String corpus) throws IOException {
+        writeFile(new File(root, "env/" + EXECUTOR),
+                "public class Main {\n"
+                        + "    public static void main(String[] args) {\n"
+                        + "        System.out.println(new Adder().add(2, 3));\n"
+                        + "    }\n"
+                        + "}\n");
+        writeFile(new File(root, "env/" + CLASS + ".java"), "public class Adder {\n}\n");
+        writeFile(new File(root, "exp/" + CLASS), "5");
+
+        final File retval = new File(root, "tests/tp-" + STEP + "/Smith_" + STUDENT + "_1_a_b_" + CLASS + ".java");
+        writeFile(retval, source(corpus));
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Writes a file and its parent directories.
+     * </p>
+     *
+     * @param file the file
+     * @param content the content
+     * @throws IOException if the file can't be written
+     */
+    private static void writeFile(final File file, final String content) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * <p>
+     * Deletes a generated directory.
+     * </p>
+     *
+     * @param root the directory
+     * @throws IOException if a file can't be deleted
+     */
+    public static void delete(final File root) throws IOException {
+        try (final Stream<Path> paths = Files.walk(root.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    /**
+     * <p>
+     * Generates an output of the given size, without line breaks.
+     * </p>
+     *
+     * @param bytes the size
+     * @return the output
+     */
+    public static String output(final int bytes) {
+        final StringBuilder retval = new StringBuilder(bytes + 16);
+
+        for (int i = 0; retval.length() < bytes; i++) {
+            retval.append(i).append(", ");
+        }
+
+        retval.setLength(bytes);
+        return retval.toString();
+    }
+
+    /**
+     * <p>
+     * Generates the string representation of an array of random integers.
+     * </p>
+     *
+     * @param elements the number of elements
+     * @param canonical {@code true} for non negative integers, {@code false} to include negative ones
+     * @param sorted {@code true} to sort the elements in ascending order
+     * @param seed the seed of the random generator
+     * @return the elements separated by ", "
+     */
+    public static String array(final int elements, final boolean canonical, final boolean sorted, final long seed) {
+        final Random random = new Random(seed);
+        final int[] values = new int[elements];
+
+        for (int i = 0; i < elements; i++) {
+            values[i] = canonical ? random.nextInt(Integer.MAX_VALUE) : random.nextInt();
+        }
+
+        if (sorted) {
+            Arrays.sort(values);
+        }
+
+        final StringBuilder retval = new StringBuilder(elements * 12);
+
+        for (int i = 0; i < elements; i++) {
+            if (i > 0) {
+                retval.append(", ");
+            }
+
+            retval.append(values[i]);
+        }
+
+        return retval.toString();
+    }
+}
@@ -0,0 +1,129 @@
+package com.github.gdrouet.jtester;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Measures the expectations comparing a whole output, from 1 KB to 100 MB. The checks done while the output is
+ * captured are measured on the same output delivered in 8 KB writes.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ExpectationBenchmark {
+
+    /**
+     * Size of each write of the captured output.
+     */
+    private static final int WRITE = 8192;
+
+    /**
+     * The size of the output.
+     */
+    @Param({ "1024", "1048576", "104857600" })
+    private int bytes;
+
+    /**
+     * The output, equal to the expected result.
+     */
+    private String output;
+
+    /**
+     * The output as captured.
+     */
+    private byte[] captured;
+
+    /**
+     * A regular expression matching the output.
+     */
+    private String pattern;
+
+    /**
+     * Compares the output.
+     */
+    private Expectation strict;
+
+    /**
+     * Matches the output.
+     */
+    private Expectation regex;
+
+    /**
+     * <p>
+     * Generates the output.
+     * </p>
+     */
+    @Setup
+    public void setup() {
+        output = Corpus.output(bytes);
+        captured = output.getBytes(StandardCharsets.UTF_8);
+        pattern = "[0-9, ]+";
+        strict = new StrictEqualsExpectation(Corpus.CLASS);
+        regex = new RegexMatchExpectation(Corpus.CLASS);
+    }
+
+    /**
+     * <p>
+     * Compares the output once it is complete. A copy is compared so the strings are not identical.
+     * </p>
+     *
+     * @return the result
+     */
+    @Benchmark
+    public boolean strictEquals() {
+        return strict.isResultExpected(output, new String(captured, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * <p>
+     * Compares the output while it is captured.
+     * </p>
+     *
+     * @return {@code true} if the output has been rejected
+     */
+    @Benchmark
+    public boolean strictEqualsWhileCaptured() {
+        int from = 0;
+
+        while (from < captured.length) {
+            final int to = Math.min(from + WRITE, captured.length);
+
+            if (strict.isRejected(output, captured, from, to)) {
+                return true;
+            }
+
+            from = to;
+        }
+
+        return false;
+    }
+
+    /**
+     * <p>
+     * Matches the output with a regular expression.
+     * </p>
+     *
+     * @return the result
+     */
+    @Benchmark
+    public boolean regexMatch() {
+        return regex.isResultExpected(pattern, output);
+    }
+}
@@ -0,0 +1,157 @@
+package com.github.gdrouet.jtester;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Measures the stages graded for each (registration, student) pair on one generated submission: the merge of the
+ * environment, executor and file to test, the in-memory compilation of the merged source and the execution of the
+ * compiled classes. Each stage starts from the result of the previous one computed once during the setup.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PipelineBenchmark {
+
+    /**
+     * The file to test, see {@link Corpus#source(String)}.
+     */
+    @Param({ "SMALL", "LARGE-100", "LARGE-1000", "PATHOLOGICAL-100", "PATHOLOGICAL-1000" })
+    private String corpus;
+
+    /**
+     * The directory containing the generated files.
+     */
+    private File root;
+
+    /**
+     * The tester.
+     */
+    private JTester tester;
+
+    /**
+     * The registration of the generated step.
+     */
+    private JTester.Registration registration;
+
+    /**
+     * The file to test.
+     */
+    private File file;
+
+    /**
+     * The merged source.
+     */
+    private String source;
+
+    /**
+     * The compiled classes.
+     */
+    private Map<String, byte[]> classes;
+
+    /**
+     * The expected result.
+     */
+    private String expected;
+
+    /**
+     * <p>
+     * Generates the submission, then prepares and compiles it once.
+     * </p>
+     *
+     * @throws IOException if the submission can't be generated or compiled
+     */
+    @Setup
+    public void setup() throws IOException {
+        root = Files.createTempDirectory("jtester-bench").toFile();
+        file = Corpus.write(root, corpus);
+        tester = new JTester(new File(root, "tests"), new File(root, "exp"), new File(root, "env"));
+        tester.setInMemory(true);
+        registration = tester.addRegistration(Corpus.STEP,
+                Corpus.EXECUTOR,
+                new StrictEqualsExpectation(Corpus.CLASS),
+                true,
+                Corpus.CLASS + ".java");
+        source = prepare();
+        classes = compile();
+        expected = Expectation.load(new File(root, "exp/" + Corpus.CLASS));
+
+        if (classes == null) {
+            throw new IllegalStateException("Generated submission does not compile");
+        }
+    }
+
+    /**
+     * <p>
+     * Stops the tester and deletes the generated files.
+     * </p>
+     *
+     * @throws IOException if a file can't be deleted
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+        tester.shutdown();
+        Corpus.delete(root);
+    }
+
+    /**
+     * <p>
+     * Merges the environment, the executor and the file to test.
+     * </p>
+     *
+     * @return the merged source
+     * @throws IOException if a file can't be read
+     */
+    @Benchmark
+    public String prepare() throws IOException {
+        return tester.merge(registration, Corpus.CLASS, file);
+    }
+
+    /**
+     * <p>
+     * Compiles the merged source in memory.
+     * </p>
+     *
+     * @return the bytecode, {@code null} if compilation fails
+     * @throws IOException if I/O error occurs
+     */
+    @Benchmark
+    public Map<String, byte[]> compile() throws IOException {
+        return tester.compile(source, new HashMap<>(), registration, Corpus.EXECUTOR);
+    }
+
+    /**
+     * <p>
+     * Executes the compiled classes with a fresh class loader.
+     * </p>
+     *
+     * @return the output, empty if the execution fails
+     */
+    @Benchmark
+    public Optional<String> execute() {
+        return tester.execute(new String[0], root, classes, registration, "Main", expected, new HashMap<>());
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.gdrouet.jtester;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Measures {@link TokenSourceRewriter} alone on the generated files to test, without any I/O.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RewriterBenchmark {
+
+    /**
+     * The file to test, see {@link Corpus#source(String)}.
+     */
+    @Param({ "SMALL", "LARGE-100", "LARGE-10000", "PATHOLOGICAL-100", "PATHOLOGICAL-10000" })
+    private String corpus;
+
+    /**
+     * The rewriter, removing the debug statements.
+     */
+    private SourceRewriter rewriter;
+
+    /**
+     * The file to test.
+     */
+    private String content;
+
+    /**
+     * <p>
+     * Generates the file to test.
+     * </p>
+     */
+    @Setup
+    public void setup() {
+        rewriter = new TokenSourceRewriter(true);
+        content = Corpus.source(corpus);
+    }
+
+    /**
+     * <p>
+     * Rewrites the file to test.
+     * </p>
+     *
+     * @return the rewritten source
+     */
+    @Benchmark
+    public StringBuilder rewrite() {
+        final StringBuilder imports = new StringBuilder();
+        final StringBuilder retval = new StringBuilder();
+        rewriter.rewrite(content, false, Corpus.CLASS, "Tested", imports, retval);
+        return retval;
+    }
+}
@@ -1,7 +1,6 @@
 package com.github.gdrouet.jtester;
 
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * This expectation checks that each possible result occurs at least once in 10 executions.
@@ -24,7 +23,7 @@ public class AtLeastOneOccurrenceExpectation extends Expectation {
      */
     @Override
     public boolean isResultExpected(final String expected, final String... result) {
-        final Matcher matcher = Pattern.compile(expected).matcher(String.join("", result));
+        final Matcher matcher = pattern(expected).matcher(String.join("", result));
         boolean match = false;
 
         while (matcher.find()) {
@@ -39,4 +38,18 @@ public class AtLeastOneOccurrenceExpectation extends Expectation {
 
         return match;
     }
+
+    /**
+     * <p>
+     * The remaining executions are skipped as soon as every possible result occurred.
+     * </p>
+     *
+     * @param expected the expected result
+     * @param result the result of each execution run so far
+     * @return {@code true} if the result is already expected, {@code false} otherwise
+     */
+    @Override
+    public boolean isDecided(final String expected, final String... result) {
+        return isResultExpected(expected, result);
+    }
 }
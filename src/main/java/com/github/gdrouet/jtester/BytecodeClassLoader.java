@@ -0,0 +1,41 @@
+package com.github.gdrouet.jtester;
+
+import java.util.Map;
+
+/**
+ * A class loader defining classes directly from bytecode held in memory.
+ */
+public class BytecodeClassLoader extends ClassLoader {
+
+    /**
+     * The bytecode associated to the binary name of each class.
+     */
+    private final Map<String, byte[]> classes;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param parent the parent class loader
+     * @param bytecode the bytecode associated to the binary name of each class
+     */
+    public BytecodeClassLoader(final ClassLoader parent, final Map<String, byte[]> bytecode) {
+        super(parent);
+        classes = bytecode;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Class<?> findClass(final String name) throws ClassNotFoundException {
+        final byte[] bytes = classes.get(name);
+
+        if (bytes == null) {
+            throw new ClassNotFoundException(name);
+        }
+
+        return defineClass(name, bytes, 0, bytes.length);
+    }
+}
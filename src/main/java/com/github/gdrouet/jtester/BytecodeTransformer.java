@@ -0,0 +1,21 @@
+package com.github.gdrouet.jtester;
+
+/**
+ * <p>
+ * A bytecode transformer modifies each class of the code under test right before it is defined by a
+ * {@link BytecodeClassLoader}.
+ * </p>
+ */
+public interface BytecodeTransformer {
+
+    /**
+     * <p>
+     * Transforms the bytecode of a class.
+     * </p>
+     *
+     * @param name the binary name of the class
+     * @param bytecode the class file
+     * @return the transformed class file
+     */
+    byte[] transform(String name, byte[] bytecode);
+}
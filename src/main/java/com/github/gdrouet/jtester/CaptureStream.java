@@ -0,0 +1,171 @@
+package com.github.gdrouet.jtester;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * A bounded sink capturing the output of an execution. Line breaks are dropped while bytes are written. When the
+ * captured output exceeds a limit or when the expectation rejects the output captured so far, each write throws a
+ * {@link Stop} error to stop the execution instead of buffering everything.
+ * </p>
+ */
+public class CaptureStream extends OutputStream {
+
+    /**
+     * <p>
+     * Error thrown into the executed code to stop it. This is an error so the code under test does not catch it with
+     * the usual exception handlers.
+     * </p>
+     */
+    public static final class Stop extends Error {
+
+        /**
+         * Serial version UID.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         */
+        private Stop() {
+            super("Output capture stopped", null, false, false);
+        }
+    }
+
+    /**
+     * The captured bytes.
+     */
+    private byte[] buffer;
+
+    /**
+     * Number of captured bytes.
+     */
+    private int size;
+
+    /**
+     * Maximum number of bytes.
+     */
+    private final int limit;
+
+    /**
+     * The expectation checking the output while it is captured, {@code null} if none.
+     */
+    private final Expectation expectation;
+
+    /**
+     * The expected result.
+     */
+    private final String expected;
+
+    /**
+     * The limit has been exceeded.
+     */
+    private volatile boolean overflow;
+
+    /**
+     * The expectation has rejected the output.
+     */
+    private volatile boolean rejected;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param max maximum number of bytes
+     * @param e the expectation checking the output while it is captured, {@code null} if none
+     * @param exp the expected result
+     */
+    public CaptureStream(final int max, final Expectation e, final String exp) {
+        buffer = new byte[Math.min(max, 256)];
+        limit = max;
+        expectation = e;
+        expected = exp;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(final int b) {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void write(final byte[] b, final int off, final int len) {
+        if (overflow || rejected) {
+            throw new Stop();
+        }
+
+        final int from = size;
+
+        for (int i = off; i < off + len; i++) {
+            if (b[i] != '\n' && b[i] != '\r') {
+                if (size == limit) {
+                    overflow = true;
+                    throw new Stop();
+                } else if (size == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, (int) Math.min((long) size * 2, limit));
+                }
+
+                buffer[size++] = b[i];
+            }
+        }
+
+        if (expectation != null && size > from && expectation.isRejected(expected, buffer, from, size)) {
+            rejected = true;
+            throw new Stop();
+        }
+    }
+
+    /**
+     * <p>
+     * Indicates if the output exceeded the limit.
+     * </p>
+     *
+     * @return {@code true} if the execution has been stopped because of the output size, {@code false} otherwise
+     */
+    public boolean isOverflow() {
+        return overflow;
+    }
+
+    /**
+     * <p>
+     * Indicates if the expectation rejected the output before the end of the execution.
+     * </p>
+     *
+     * @return {@code true} if the execution has been stopped because of the expectation, {@code false} otherwise
+     */
+    public boolean isRejected() {
+        return rejected;
+    }
+
+    /**
+     * <p>
+     * Gets the number of captured bytes.
+     * </p>
+     *
+     * @return the size
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * <p>
+     * Decodes the captured output.
+     * </p>
+     *
+     * @return the output without line breaks
+     */
+    @Override
+    public synchronized String toString() {
+        return new String(buffer, 0, size);
+    }
+}
@@ -0,0 +1,120 @@
+package com.github.gdrouet.jtester;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * <p>
+ * Creates the class loaders of the executions of a submission. The bytecode is read and transformed once, then each
+ * execution defines its classes in a fresh {@link BytecodeClassLoader} so statics are never shared between executions.
+ * These loaders hold no file handle and are released with the classes they define as soon as the execution ends.
+ * </p>
+ */
+public class ClassLoaderFactory {
+
+    /**
+     * The parent of the created class loaders.
+     */
+    private final ClassLoader parent;
+
+    /**
+     * The transformed bytecode associated to the binary name of each class.
+     */
+    private final Map<String, byte[]> classes;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param p the parent of the created class loaders
+     * @param bytecode the bytecode associated to the binary name of each class
+     * @param transformer the transformer applied once to each class, {@code null} if none
+     */
+    public ClassLoaderFactory(final ClassLoader p, final Map<String, byte[]> bytecode, final BytecodeTransformer transformer) {
+        parent = p;
+
+        if (transformer == null) {
+            classes = bytecode;
+        } else {
+            classes = new HashMap<>(bytecode.size() * 2);
+
+            for (final Map.Entry<String, byte[]> c : bytecode.entrySet()) {
+                classes.put(c.getKey(), transformer.transform(c.getKey(), c.getValue()));
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Reads all the classes compiled into a directory.
+     * </p>
+     *
+     * @param env the directory
+     * @return the bytecode associated to the binary name of each class
+     * @throws IOException if I/O error occurs
+     */
+    public static Map<String, byte[]> read(final File env) throws IOException {
+        final Map<String, byte[]> retval = new HashMap<>();
+        final Path root = env.toPath();
+
+        try (final Stream<Path> paths = Files.walk(root)) {
+            for (final Path path : (Iterable<Path>) paths::iterator) {
+                final String name = root.relativize(path).toString();
+
+                if (name.endsWith(".class")) {
+                    retval.put(name.substring(0, name.length() - ".class".length()).replace(File.separatorChar, '.'), Files.readAllBytes(path));
+                }
+            }
+        }
+
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Gets the bytecode defined by the created class loaders.
+     * </p>
+     *
+     * @return the transformed bytecode associated to the binary name of each class
+     */
+    public Map<String, byte[]> getClasses() {
+        return classes;
+    }
+
+    /**
+     * <p>
+     * Creates a class loader for a new execution.
+     * </p>
+     *
+     * @return the class loader
+     */
+    public ClassLoader newClassLoader() {
+        return new BytecodeClassLoader(parent, classes);
+    }
+
+    /**
+     * <p>
+     * Gets the memory used by the class metadata of this JVM. This value must remain stable during a long run, a
+     * growth reveals class loaders which are never released.
+     * </p>
+     *
+     * @return the number of bytes, -1 if the JVM has no metaspace
+     */
+    public static long getMetaspaceUsed() {
+        for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if ("Metaspace".equals(pool.getName())) {
+                return pool.getUsage().getUsed();
+            }
+        }
+
+        return -1;
+    }
+}
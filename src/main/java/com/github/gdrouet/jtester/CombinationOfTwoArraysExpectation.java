@@ -1,7 +1,9 @@
 package com.github.gdrouet.jtester;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Checks that an array's string representation is the combination of two others.
@@ -22,42 +24,155 @@ public class CombinationOfTwoArraysExpectation extends Expectation {
      */
     @Override
     public boolean isResultExpected(final String expected, final String ... result) {
-        final Matcher matcher = Pattern.compile(expected).matcher(result[0]);
-        int it = 0;
+        final Matcher matcher = pattern(expected).matcher(result[0]);
 
-        while (matcher.find()) {
-            it++;
-            final String[] first = matcher.group(1).split(", ");
-            final String[] second = matcher.group(2).split(", ");
-            final String[] combine = matcher.group(3).split(", ");
+        if (!matcher.find()) {
+            return false;
+        }
+
+        final String s = result[0];
+        final int[] first = canonical(s, matcher.start(1), matcher.end(1));
+        final int[] second = first == null ? null : canonical(s, matcher.start(2), matcher.end(2));
+        final int[] combine = second == null ? null : canonical(s, matcher.start(3), matcher.end(3));
+
+        // Decimal representations can be compared by value
+        if (combine != null) {
+            return isCombination(first, second, combine);
+        }
+
+        return isCombination(matcher.group(1).split(", "), matcher.group(2).split(", "), matcher.group(3).split(", "));
+    }
+
+    /**
+     * <p>
+     * Checks that each element of the combined array equals an element of the first array or ends with an element
+     * of the second array.
+     * </p>
+     *
+     * @param first the first array
+     * @param second the second array
+     * @param combine the combined array
+     * @return {@code true} if the combined array is a combination of the two others, {@code false} otherwise
+     */
+    private static boolean isCombination(final String[] first, final String[] second, final String[] combine) {
+        if ((first.length + second.length) != combine.length) {
+            return false;
+        }
+
+        final Set<String> equals = new HashSet<>(Arrays.asList(first));
+        final Set<String> suffixes = new HashSet<>(Arrays.asList(second));
+        int maxSuffix = 0;
+
+        for (final String suffix : second) {
+            maxSuffix = Math.max(maxSuffix, suffix.length());
+        }
+
+        for (final String c : combine) {
+            boolean find = equals.contains(c);
+
+            // Look for each suffix of the combined element among the elements of the second array
+            for (int len = 0; !find && len <= Math.min(maxSuffix, c.length()); len++) {
+                find = suffixes.contains(c.substring(c.length() - len));
+            }
+
+            if (!find) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * <p>
+     * Checks a combination of arrays containing canonical decimal representations. A number ends with the
+     * representation of another number if the remainder of the division by a power of ten equals this other number.
+     * </p>
+     *
+     * @param first the first array
+     * @param second the second array
+     * @param combine the combined array
+     * @return {@code true} if the combined array is a combination of the two others, {@code false} otherwise
+     */
+    private static boolean isCombination(final int[] first, final int[] second, final int[] combine) {
+        if ((first.length + second.length) != combine.length) {
+            return false;
+        }
+
+        final IntHashSet equals = new IntHashSet(first.length);
+        final IntHashSet suffixes = new IntHashSet(second.length);
 
-            if ((first.length + second.length) != combine.length) {
+        for (final int f : first) {
+            equals.add(f);
+        }
+
+        for (final int suffix : second) {
+            suffixes.add(suffix);
+        }
+
+        for (final int c : combine) {
+            boolean find = equals.contains(c);
+
+            for (long power = 10; !find && power / 10 <= Math.max(c, 1); power *= 10) {
+                find = suffixes.contains((int) (c % power));
+            }
+
+            if (!find) {
                 return false;
             }
+        }
 
-            for (final String c : combine) {
-                boolean find = false;
+        return true;
+    }
 
-                for (final String f : first) {
-                    if (c.equals(f)) {
-                        find = true;
-                    }
-                }
+    /**
+     * <p>
+     * Parses a region containing canonical decimal representations of non negative integers separated by ", ".
+     * Canonical representations have no sign and no leading zero, so equal strings are equal numbers.
+     * </p>
+     *
+     * @param s the string
+     * @param start the region start
+     * @param end the region end
+     * @return the integers, {@code null} if any element is not canonical
+     */
+    private static int[] canonical(final String s, final int start, final int end) {
+        if (start < 0) {
+            return null;
+        }
+
+        int count = 1;
+
+        for (int i = start; i < end; i++) {
+            if (s.charAt(i) == ',') {
+                count++;
+            }
+        }
+
+        final int[] retval = new int[count];
+        int i = start;
+
+        for (int n = 0; n < count; n++) {
+            final int from = i;
+            long value = 0;
+
+            while (i < end && s.charAt(i) >= '0' && s.charAt(i) <= '9' && value <= Integer.MAX_VALUE) {
+                value = value * 10 + s.charAt(i++) - '0';
+            }
 
-                for (final String s : second) {
-                    if (c.endsWith(s)) {
-                        find = true;
-                    }
-                }
+            final boolean last = n == count - 1;
 
-                if (!find) {
-                    return false;
-                }
+            if (i == from
+                    || value > Integer.MAX_VALUE
+                    || (s.charAt(from) == '0' && i - from > 1)
+                    || (last ? i != end : !(i + 1 < end && s.charAt(i) == ',' && s.charAt(i + 1) == ' '))) {
+                return null;
             }
 
-            return true;
+            retval[n] = (int) value;
+            i += 2;
         }
 
-        return it != 0;
+        return retval;
     }
 }
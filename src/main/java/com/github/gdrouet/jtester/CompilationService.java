@@ -0,0 +1,232 @@
+package com.github.gdrouet.jtester;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * A long-lived compilation service sharing one {@link JavaCompiler} between all compilations. The standard file
+ * managers are not thread safe so they are pooled: each one keeps the index of the platform classes built by javac
+ * across the compilations instead of building it again for each student.
+ * </p>
+ */
+public class CompilationService {
+
+    /**
+     * The system compiler.
+     */
+    private final JavaCompiler compiler;
+
+    /**
+     * Idle file managers.
+     */
+    private final BlockingQueue<StandardJavaFileManager> fileManagers;
+
+    /**
+     * Maximum number of file managers.
+     */
+    private final int size;
+
+    /**
+     * Number of file managers created so far.
+     */
+    private final AtomicInteger created;
+
+    /**
+     * Number of compilations.
+     */
+    private final AtomicLong compilations;
+
+    /**
+     * Number of sources compiled, a compilation may compile the sources of many students.
+     */
+    private final AtomicLong units;
+
+    /**
+     * Time spent in compilations.
+     */
+    private final AtomicLong nanos;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param poolSize the maximum number of concurrent compilations
+     */
+    public CompilationService(final int poolSize) {
+        compiler = ToolProvider.getSystemJavaCompiler();
+        fileManagers = new LinkedBlockingQueue<>();
+        size = poolSize;
+        created = new AtomicInteger();
+        compilations = new AtomicLong();
+        units = new AtomicLong();
+        nanos = new AtomicLong();
+
+        if (compiler == null) {
+            throw new IllegalStateException("No system Java compiler, a JDK is required");
+        }
+    }
+
+    /**
+     * <p>
+     * Compiles a source file and writes the classes to the given directory.
+     * </p>
+     *
+     * @param source the file to compile
+     * @param output the directory where classes are written
+     * @param diagnostics the collector of compilation errors
+     * @return {@code true} in case of success, {@code false} otherwise
+     * @throws IOException if I/O error occurs
+     */
+    public boolean compile(final File source, final File output, final DiagnosticCollector<JavaFileObject> diagnostics)
+            throws IOException {
+        final StandardJavaFileManager fileManager = borrow();
+        final long start = System.nanoTime();
+
+        try {
+            return compiler.getTask(null,
+                    fileManager,
+                    diagnostics,
+                    Arrays.asList("-d", output.getAbsolutePath()),
+                    null,
+                    fileManager.getJavaFileObjects(source)).call();
+        } finally {
+            release(fileManager, start, 1);
+        }
+    }
+
+    /**
+     * <p>
+     * Compiles sources held in memory.
+     * </p>
+     *
+     * @param sources the sources to compile
+     * @param options the compiler options
+     * @param diagnostics the collector of compilation errors
+     * @return the bytecode associated to the binary name of each class, {@code null} if compilation fails
+     * @throws IOException if I/O error occurs
+     */
+    public Map<String, byte[]> compile(final List<? extends JavaFileObject> sources,
+                                       final List<String> options,
+                                       final DiagnosticCollector<JavaFileObject> diagnostics)
+            throws IOException {
+        final StandardJavaFileManager fileManager = borrow();
+        final long start = System.nanoTime();
+
+        try (final MemoryFileManager memory = new MemoryFileManager(fileManager)) {
+            return compiler.getTask(null, memory, diagnostics, options, null, sources).call() ? memory.getClasses() : null;
+        } finally {
+            release(fileManager, start, sources.size());
+        }
+    }
+
+    /**
+     * <p>
+     * Takes an idle file manager, creating it if the pool is not full.
+     * </p>
+     *
+     * @return the file manager
+     * @throws IOException if the thread is interrupted while waiting
+     */
+    private StandardJavaFileManager borrow() throws IOException {
+        final StandardJavaFileManager retval = fileManagers.poll();
+
+        if (retval != null) {
+            return retval;
+        } else if (created.incrementAndGet() <= size) {
+            return compiler.getStandardFileManager(null, null, null);
+        }
+
+        created.decrementAndGet();
+
+        try {
+            return fileManagers.take();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * <p>
+     * Gives back a file manager to the pool and records the compilation time.
+     * </p>
+     *
+     * @param fileManager the file manager
+     * @param start the time when compilation started
+     * @param count the number of sources compiled
+     */
+    private void release(final StandardJavaFileManager fileManager, final long start, final int count) {
+        nanos.addAndGet(System.nanoTime() - start);
+        compilations.incrementAndGet();
+        units.addAndGet(count);
+        fileManagers.offer(fileManager);
+    }
+
+    /**
+     * <p>
+     * Gets the number of compilations performed so far.
+     * </p>
+     *
+     * @return the number of compilations
+     */
+    public long getCompilations() {
+        return compilations.get();
+    }
+
+    /**
+     * <p>
+     * Gets the number of sources compiled so far. A source compiled again after a failed batch is counted again.
+     * </p>
+     *
+     * @return the number of sources
+     */
+    public long getUnits() {
+        return units.get();
+    }
+
+    /**
+     * <p>
+     * Gets the average duration of the compilation of one source, a batch being shared between its sources.
+     * </p>
+     *
+     * @param unit the unit of the result
+     * @return the average duration, 0 if nothing has been compiled
+     */
+    public double getAverageLatency(final TimeUnit unit) {
+        final long count = units.get();
+        return count == 0 ? 0 : (double) nanos.get() / unit.toNanos(1) / count;
+    }
+
+    /**
+     * <p>
+     * Closes all the idle file managers.
+     * </p>
+     */
+    public void shutdown() {
+        StandardJavaFileManager fileManager;
+
+        while ((fileManager = fileManagers.poll()) != null) {
+            try {
+                fileManager.close();
+            } catch (IOException ioe) {
+                // Nothing to release
+            }
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package com.github.gdrouet.jtester;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * A persistent cache of compilation results keyed by a hash of the prepared source, the compiler options and the
+ * JDK version. A hit returns the stored bytecode or the stored failure cell, so unchanged submissions are never
+ * compiled again. Each entry is stored in its own file and an index file keeps the entries from the least to the most
+ * recently used. The least recently used entries are evicted when the total size exceeds a limit.
+ * </p>
+ */
+public class CompileCache {
+
+    /**
+     * <p>
+     * A compilation result.
+     * </p>
+     */
+    public static final class Entry {
+
+        /**
+         * The bytecode associated to the binary name of each class, {@code null} if compilation fails.
+         */
+        private final Map<String, byte[]> classes;
+
+        /**
+         * The failure reported in the student's report, {@code null} if compilation succeeds.
+         */
+        private final String failure;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param c the classes
+         * @param f the failure
+         */
+        private Entry(final Map<String, byte[]> c, final String f) {
+            classes = c;
+            failure = f;
+        }
+
+        /**
+         * <p>
+         * Gets the bytecode.
+         * </p>
+         *
+         * @return the bytecode associated to the binary name of each class, {@code null} if compilation fails
+         */
+        public Map<String, byte[]> getClasses() {
+            return classes;
+        }
+
+        /**
+         * <p>
+         * Gets the failure.
+         * </p>
+         *
+         * @return the failure reported in the student's report, {@code null} if compilation succeeds
+         */
+        public String getFailure() {
+            return failure;
+        }
+    }
+
+    /**
+     * Name of the index file.
+     */
+    private static final String INDEX = "index";
+
+    /**
+     * The directory containing the entries.
+     */
+    private final File directory;
+
+    /**
+     * Maximum size of all the entries in bytes.
+     */
+    private final long maxBytes;
+
+    /**
+     * Size of each entry, from the least to the most recently used.
+     */
+    private final LinkedHashMap<String, Long> index;
+
+    /**
+     * Current size of all the entries.
+     */
+    private long bytes;
+
+    /**
+     * <p>
+     * Builds a new instance and loads the index of the given directory. Entries written after the index was last
+     * saved are added as the most recently used ones and leftover temporary files are deleted.
+     * </p>
+     *
+     * @param dir the directory containing the entries
+     * @param max maximum size of all the entries in bytes
+     * @throws IOException if the index can't be read
+     */
+    public CompileCache(final File dir, final long max) throws IOException {
+        directory = dir;
+        maxBytes = max;
+        index = new LinkedHashMap<>(16, 0.75f, true);
+        directory.mkdirs();
+
+        final File file = new File(directory, INDEX);
+
+        if (file.isFile()) {
+            try (final BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                String line;
+
+                while ((line = reader.readLine()) != null) {
+                    final int sep = line.indexOf(' ');
+
+                    // Ignore entries removed from the directory
+                    if (sep != -1 && new File(directory, line.substring(0, sep)).isFile()) {
+                        final long size = Long.parseLong(line.substring(sep + 1));
+                        index.put(line.substring(0, sep), size);
+                        bytes += size;
+                    }
+                }
+            }
+        }
+
+        final File[] files = directory.listFiles();
+
+        if (files != null) {
+            for (final File f : files) {
+                final String name = f.getName();
+
+                if (name.contains(".tmp")) {
+                    // Left by a write interrupted in a previous run
+                    f.delete();
+                } else if (!name.equals(INDEX) && f.isFile() && !index.containsKey(name)) {
+                    // Written after the last time the index was saved, the order of use is lost
+                    index.put(name, f.length());
+                    bytes += f.length();
+                }
+            }
+        }
+
+        // The limit may have been reduced since the last run
+        evict(null);
+    }
+
+    /**
+     * <p>
+     * Computes the key of a compilation.
+     * </p>
+     *
+     * @param source the source to compile
+     * @param options the compiler options, {@code null} if none
+     * @return the key
+     */
+    public String key(final String source, final List<String> options) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(System.getProperty("java.version").getBytes(StandardCharsets.UTF_8));
+
+            if (options != null) {
+                for (final String option : options) {
+                    digest.update((byte) 0);
+                    digest.update(option.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+
+            digest.update((byte) 0);
+            digest.update(source.getBytes(StandardCharsets.UTF_8));
+
+            final StringBuilder retval = new StringBuilder(64);
+
+            for (final byte b : digest.digest()) {
+                retval.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+
+            return retval.toString();
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException(nsae);
+        }
+    }
+
+    /**
+     * <p>
+     * Gets a cached compilation result.
+     * </p>
+     *
+     * @param key the key
+     * @return the entry, {@code null} if not cached
+     */
+    public Entry get(final String key) {
+        synchronized (index) {
+            if (index.get(key) == null) {
+                return null;
+            }
+        }
+
+        try (final DataInputStream in = new DataInputStream(new FileInputStream(new File(directory, key)))) {
+            if (in.readBoolean()) {
+                return new Entry(null, in.readUTF());
+            }
+
+            final Map<String, byte[]> classes = new LinkedHashMap<>();
+
+            for (int i = in.readInt(); i > 0; i--) {
+                final String name = in.readUTF();
+                final byte[] b = new byte[in.readInt()];
+                in.readFully(b);
+                classes.put(name, b);
+            }
+
+            return new Entry(classes, null);
+        } catch (IOException ioe) {
+            // Corrupted or evicted meanwhile, compile again
+            return null;
+        }
+    }
+
+    /**
+     * <p>
+     * Caches a successful compilation.
+     * </p>
+     *
+     * @param key the key
+     * @param classes the bytecode associated to the binary name of each class
+     * @throws IOException if I/O error occurs
+     */
+    public void putClasses(final String key, final Map<String, byte[]> classes) throws IOException {
+        put(key, new Entry(classes, null));
+    }
+
+    /**
+     * <p>
+     * Caches a failed compilation.
+     * </p>
+     *
+     * @param key the key
+     * @param failure the failure reported in the student's report
+     * @throws IOException if I/O error occurs
+     */
+    public void putFailure(final String key, final String failure) throws IOException {
+        put(key, new Entry(null, failure));
+    }
+
+    /**
+     * <p>
+     * Writes an entry and evicts the least recently used entries if needed. The index is not saved, see
+     * {@link #save()}.
+     * </p>
+     *
+     * @param key the key
+     * @param entry the entry
+     * @throws IOException if I/O error occurs
+     */
+    private void put(final String key, final Entry entry) throws IOException {
+        final File file = new File(directory, key);
+        final File tmp = new File(directory, key + ".tmp" + Thread.currentThread().getId());
+
+        try (final DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp))) {
+            out.writeBoolean(entry.failure != null);
+
+            if (entry.failure != null) {
+                out.writeUTF(entry.failure);
+            } else {
+                out.writeInt(entry.classes.size());
+
+                for (final Map.Entry<String, byte[]> c : entry.classes.entrySet()) {
+                    out.writeUTF(c.getKey());
+                    out.writeInt(c.getValue().length);
+                    out.write(c.getValue());
+                }
+            }
+        } catch (IOException ioe) {
+            tmp.delete();
+            throw ioe;
+        }
+
+        synchronized (index) {
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException ioe) {
+                tmp.delete();
+                throw ioe;
+            }
+
+            final Long previous = index.put(key, file.length());
+            bytes += file.length() - (previous == null ? 0 : previous);
+            evict(key);
+        }
+    }
+
+    /**
+     * <p>
+     * Evicts the least recently used entries until the total size fits the limit.
+     * </p>
+     *
+     * @param keep the key of an entry which must not be evicted, {@code null} if none
+     */
+    private void evict(final String keep) {
+        final Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+
+        while (bytes > maxBytes && it.hasNext()) {
+            final Map.Entry<String, Long> eldest = it.next();
+
+            if (!eldest.getKey().equals(keep)) {
+                new File(directory, eldest.getKey()).delete();
+                bytes -= eldest.getValue();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Saves the index, keeping the order of use. Called once the compilations are done rather than on each
+     * {@code put}, entries written since the last save are found again when the cache is opened.
+     * </p>
+     *
+     * @throws IOException if I/O error occurs
+     */
+    public void save() throws IOException {
+        synchronized (index) {
+            final File tmp = new File(directory, INDEX + ".tmp");
+
+            try (final BufferedWriter writer = new BufferedWriter(new FileWriter(tmp))) {
+                for (final Map.Entry<String, Long> entry : index.entrySet()) {
+                    writer.write(entry.getKey() + ' ' + entry.getValue());
+                    writer.newLine();
+                }
+            }
+
+            Files.move(tmp.toPath(), new File(directory, INDEX).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
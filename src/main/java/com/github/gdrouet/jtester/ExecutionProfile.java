@@ -0,0 +1,135 @@
+package com.github.gdrouet.jtester;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * <p>
+ * The resources consumed by the executions of a submission. The first executions are warm-up iterations letting the
+ * JVM load and compile the code, they are dropped. Times and allocations are averaged over the remaining executions,
+ * the output size is the largest one.
+ * </p>
+ */
+public final class ExecutionProfile {
+
+    /**
+     * Number of measured executions.
+     */
+    private final int executions;
+
+    /**
+     * Average elapsed time in nanoseconds.
+     */
+    private final long wallTime;
+
+    /**
+     * Average CPU time in nanoseconds.
+     */
+    private final long cpuTime;
+
+    /**
+     * Average number of bytes allocated in the heap.
+     */
+    private final long allocatedBytes;
+
+    /**
+     * Largest number of bytes captured.
+     */
+    private final long outputBytes;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param results the results of all the executions, in order
+     * @param warmUps the number of first executions to drop
+     */
+    public ExecutionProfile(final List<ExecutionResult> results, final int warmUps) {
+        long wall = 0;
+        long cpu = 0;
+        long allocated = 0;
+        long output = 0;
+
+        for (final ExecutionResult result : results.subList(warmUps, results.size())) {
+            wall += result.getWallTime();
+            cpu += result.getCpuTime();
+            allocated += result.getAllocatedBytes();
+            output = Math.max(output, result.getOutputBytes());
+        }
+
+        executions = results.size() - warmUps;
+        wallTime = wall / executions;
+        cpuTime = cpu / executions;
+        allocatedBytes = allocated / executions;
+        outputBytes = output;
+    }
+
+    /**
+     * <p>
+     * Gets the number of measured executions.
+     * </p>
+     *
+     * @return the executions without the warm-up iterations
+     */
+    public int getExecutions() {
+        return executions;
+    }
+
+    /**
+     * <p>
+     * Gets the average elapsed time.
+     * </p>
+     *
+     * @return the time in nanoseconds
+     */
+    public long getWallTime() {
+        return wallTime;
+    }
+
+    /**
+     * <p>
+     * Gets the average CPU time.
+     * </p>
+     *
+     * @return the time in nanoseconds
+     */
+    public long getCpuTime() {
+        return cpuTime;
+    }
+
+    /**
+     * <p>
+     * Gets the average number of bytes allocated in the heap.
+     * </p>
+     *
+     * @return the number of bytes
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * <p>
+     * Gets the largest output size.
+     * </p>
+     *
+     * @return the number of bytes, line breaks excluded
+     */
+    public long getOutputBytes() {
+        return outputBytes;
+    }
+
+    /**
+     * <p>
+     * Formats the measures for the report.
+     * </p>
+     *
+     * @return the wall time, the CPU time, the allocated bytes and the output size
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%.2fms/%.2fms cpu/%dKB/%dB",
+                wallTime / 1e6, cpuTime / 1e6, allocatedBytes / 1024, outputBytes);
+    }
+}
@@ -0,0 +1,161 @@
+package com.github.gdrouet.jtester;
+
+/**
+ * <p>
+ * The result of an execution of a 'main' method, in this JVM or in a worker JVM. The status is {@link #OK} when the
+ * method returned normally, otherwise it is the failure reported in the student's report. A successful result also
+ * carries the resources consumed by the thread running the 'main' method.
+ * </p>
+ */
+public final class ExecutionResult {
+
+    /**
+     * Status of a successful execution.
+     */
+    public static final String OK = "OK";
+
+    /**
+     * {@link #OK} or the failure reported in the student's report.
+     */
+    private final String status;
+
+    /**
+     * The captured output.
+     */
+    private final String output;
+
+    /**
+     * Elapsed time in nanoseconds.
+     */
+    private final long wallTime;
+
+    /**
+     * CPU time in nanoseconds.
+     */
+    private final long cpuTime;
+
+    /**
+     * Number of bytes allocated in the heap.
+     */
+    private final long allocatedBytes;
+
+    /**
+     * Number of bytes captured, line breaks excluded.
+     */
+    private final long outputBytes;
+
+    /**
+     * <p>
+     * Builds a new instance without measures.
+     * </p>
+     *
+     * @param s the status
+     * @param o the output, {@code null} if not captured
+     */
+    public ExecutionResult(final String s, final String o) {
+        this(s, o, 0, 0, 0, 0);
+    }
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param s the status
+     * @param o the output, {@code null} if not captured
+     * @param wall the elapsed time in nanoseconds
+     * @param cpu the CPU time in nanoseconds
+     * @param allocated the number of bytes allocated in the heap
+     * @param outputSize the number of bytes captured, line breaks excluded
+     */
+    public ExecutionResult(final String s,
+                           final String o,
+                           final long wall,
+                           final long cpu,
+                           final long allocated,
+                           final long outputSize) {
+        status = s;
+        output = o;
+        wallTime = wall;
+        cpuTime = cpu;
+        allocatedBytes = allocated;
+        outputBytes = outputSize;
+    }
+
+    /**
+     * <p>
+     * Indicates if the execution succeeded.
+     * </p>
+     *
+     * @return {@code true} if the 'main' method returned normally, {@code false} otherwise
+     */
+    public boolean isSuccess() {
+        return OK.equals(status);
+    }
+
+    /**
+     * <p>
+     * Gets the status.
+     * </p>
+     *
+     * @return {@link #OK} or the failure reported in the student's report
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    /**
+     * <p>
+     * Gets the output.
+     * </p>
+     *
+     * @return the captured output without line breaks, {@code null} if not captured
+     */
+    public String getOutput() {
+        return output;
+    }
+
+    /**
+     * <p>
+     * Gets the elapsed time.
+     * </p>
+     *
+     * @return the time in nanoseconds
+     */
+    public long getWallTime() {
+        return wallTime;
+    }
+
+    /**
+     * <p>
+     * Gets the CPU time.
+     * </p>
+     *
+     * @return the time in nanoseconds
+     */
+    public long getCpuTime() {
+        return cpuTime;
+    }
+
+    /**
+     * <p>
+     * Gets the number of bytes allocated in the heap.
+     * </p>
+     *
+     * @return the number of bytes, 0 if not supported by the JVM
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * <p>
+     * Gets the size of the captured output.
+     * </p>
+     *
+     * @return the number of bytes, line breaks excluded
+     */
+    public long getOutputBytes() {
+        return outputBytes;
+    }
+}
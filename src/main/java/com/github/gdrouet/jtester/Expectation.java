@@ -1,10 +1,33 @@
 package com.github.gdrouet.jtester;
 
+import com.github.wuic.util.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
 /**
  * An expectation checks that an expected result matches a specified value.
  */
 public abstract class Expectation {
 
+    /**
+     * Expected results already loaded, associated to the file path. Each value is prefixed by the size and the
+     * last modification of the file followed by a line break.
+     */
+    private static final ConcurrentMap<String, String> LOADED = new ConcurrentHashMap<>();
+
+    /**
+     * Last pattern compiled for each expectation file, replaced when the expected result changes so the map does not
+     * grow with each edit of a watched file.
+     */
+    private static final ConcurrentMap<String, Pattern> PATTERNS = new ConcurrentHashMap<>();
+
     /**
      * File containing the expected result.
      */
@@ -35,6 +58,52 @@ public abstract class Expectation {
         this(file, 1);
     }
 
+    /**
+     * <p>
+     * Loads the expected result contained in the given file without line breaks. The file is read again only when
+     * it is modified.
+     * </p>
+     *
+     * @param file the file
+     * @return the expected result
+     * @throws IOException if the file can't be read
+     */
+    public static String load(final File file) throws IOException {
+        final String stamp = file.lastModified() + "#" + file.length() + '\n';
+        final String loaded = LOADED.get(file.getAbsolutePath());
+
+        // Expected result never contains line break
+        if (loaded != null && loaded.startsWith(stamp)) {
+            return loaded.substring(stamp.length());
+        }
+
+        try (final InputStream expectedStream = new FileInputStream(file)) {
+            final String retval = IOUtils.readString(new InputStreamReader(expectedStream)).replace("\n", "").replace("\r", "");
+            LOADED.put(file.getAbsolutePath(), stamp + retval);
+            return retval;
+        }
+    }
+
+    /**
+     * <p>
+     * Gets the pattern compiled from the given expected result. The pattern is compiled again only when the
+     * expected result of the file changes and is shared by all the expectations of the file.
+     * </p>
+     *
+     * @param expected the expected result
+     * @return the pattern
+     */
+    protected Pattern pattern(final String expected) {
+        Pattern retval = PATTERNS.get(fileName);
+
+        if (retval == null || !retval.pattern().equals(expected)) {
+            retval = Pattern.compile(expected);
+            PATTERNS.put(fileName, retval);
+        }
+
+        return retval;
+    }
+
     /**
      * Indicates if the given value matches the expected result.
      *
@@ -44,6 +113,52 @@ public abstract class Expectation {
      */
     public abstract boolean isResultExpected(String expected, String ... result);
 
+    /**
+     * <p>
+     * Indicates while the output of a single execution is captured if it can't match the expected result anymore.
+     * In this case the execution is stopped early. Default implementation never rejects the output.
+     * </p>
+     *
+     * @param expected the expected result
+     * @param output the output captured so far, without line breaks
+     * @param from the index of the first byte captured since the previous call
+     * @param to the number of bytes captured so far
+     * @return {@code true} if the result can't be expected whatever is printed next, {@code false} otherwise
+     */
+    public boolean isRejected(final String expected, final byte[] output, final int from, final int to) {
+        return false;
+    }
+
+    /**
+     * <p>
+     * Indicates after some executions if the remaining ones can be skipped because every required outcome has been
+     * seen. The result is then checked with the executions run so far. The results are always given in the order of
+     * the executions, even when they run in parallel, and the failure of a skipped execution is ignored. Default
+     * implementation requires all the executions.
+     * </p>
+     *
+     * @param expected the expected result
+     * @param result the result of each execution run so far
+     * @return {@code true} if no more execution is needed, {@code false} otherwise
+     */
+    public boolean isDecided(final String expected, final String ... result) {
+        return false;
+    }
+
+    /**
+     * <p>
+     * Indicates if the resources consumed by a submission whose result is expected are acceptable. Default
+     * implementation accepts any profile.
+     * </p>
+     *
+     * @param profile the profile of the submission
+     * @param reference the profile of the reference solution, {@code null} if none
+     * @return {@code true} if the profile is acceptable, {@code false} otherwise
+     */
+    public boolean isProfileExpected(final ExecutionProfile profile, final ExecutionProfile reference) {
+        return true;
+    }
+
     /**
      * Returns the file containing the expected result.
      *
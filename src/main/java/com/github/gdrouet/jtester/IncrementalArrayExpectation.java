@@ -1,7 +1,6 @@
 package com.github.gdrouet.jtester;
 
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Checks that each array's string representation shows an ordered integers range.
@@ -22,14 +21,25 @@ public class IncrementalArrayExpectation extends Expectation {
      */
     @Override
     public boolean isResultExpected(final String expected, final String ... result) {
-        final Matcher matcher = Pattern.compile(expected).matcher(result[0]);
+        final Matcher matcher = pattern(expected).matcher(result[0]);
+        final IntArrayScanner array = new IntArrayScanner();
 
         while (matcher.find()) {
-            final String[] array = matcher.group(1).split(", ");
+            array.reset(result[0], matcher.start(1), matcher.end(1));
+            final int length = array.count();
 
-            for (int i = 1; i < array.length; i++) {
-                if (Integer.parseInt(array[i]) < Integer.parseInt(array[i - 1])) {
-                    return false;
+            // A single element is always ordered
+            if (length > 1) {
+                int previous = array.nextInt();
+
+                for (int i = 1; i < length; i++) {
+                    final int current = array.nextInt();
+
+                    if (current < previous) {
+                        return false;
+                    }
+
+                    previous = current;
                 }
             }
         }
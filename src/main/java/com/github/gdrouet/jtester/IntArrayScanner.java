@@ -0,0 +1,160 @@
+package com.github.gdrouet.jtester;
+
+/**
+ * <p>
+ * A cursor over the integers of an array's string representation, like "1, 2, 3". Integers are parsed in place from
+ * a region of a {@link CharSequence}, without splitting the region and without boxing. Elements are separated by
+ * ", " and parsed with the same rules as {@link Integer#parseInt(String)}.
+ * </p>
+ */
+public final class IntArrayScanner {
+
+    /**
+     * Separator between two elements.
+     */
+    private static final String SEPARATOR = ", ";
+
+    /**
+     * The scanned content.
+     */
+    private CharSequence content;
+
+    /**
+     * Index of the next element.
+     */
+    private int position;
+
+    /**
+     * End of the scanned region.
+     */
+    private int end;
+
+    /**
+     * <p>
+     * Starts scanning a new region.
+     * </p>
+     *
+     * @param c the content
+     * @param start the region start
+     * @param e the region end
+     * @return this scanner
+     */
+    public IntArrayScanner reset(final CharSequence c, final int start, final int e) {
+        content = c;
+        position = start;
+        end = e;
+        return this;
+    }
+
+    /**
+     * <p>
+     * Indicates if some characters remain to be scanned.
+     * </p>
+     *
+     * @return {@code true} if an element can be read, {@code false} otherwise
+     */
+    public boolean hasNext() {
+        return position < end;
+    }
+
+    /**
+     * <p>
+     * Counts the remaining elements. Trailing empty elements are not counted, like {@link String#split(String)} does.
+     * </p>
+     *
+     * @return the number of elements
+     */
+    public int count() {
+        int retval = 0;
+        int segments = 0;
+        int start = position;
+
+        for (int i = position; i <= end; i++) {
+            if (i == end || isSeparator(i)) {
+                segments++;
+
+                if (i > start) {
+                    retval = segments;
+                }
+
+                i += SEPARATOR.length() - 1;
+                start = i + 1;
+            }
+        }
+
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Parses the next element and moves after its separator.
+     * </p>
+     *
+     * @return the integer
+     * @throws NumberFormatException if the element is not an integer
+     */
+    public int nextInt() {
+        final int start = position;
+        int i = position;
+        boolean negative = false;
+        int limit = -Integer.MAX_VALUE;
+
+        if (i < end && (content.charAt(i) == '-' || content.charAt(i) == '+')) {
+            negative = content.charAt(i) == '-';
+            limit = negative ? Integer.MIN_VALUE : limit;
+            i++;
+        }
+
+        final int digits = i;
+        int retval = 0;
+
+        // Accumulate negatively like Integer.parseInt to handle Integer.MIN_VALUE
+        while (i < end && !isSeparator(i)) {
+            final int digit = Character.digit(content.charAt(i), 10);
+
+            if (digit < 0 || retval < limit / 10 || retval * 10 < limit + digit) {
+                throw error(start);
+            }
+
+            retval = retval * 10 - digit;
+            i++;
+        }
+
+        if (i == digits) {
+            throw error(start);
+        }
+
+        position = i < end ? i + SEPARATOR.length() : end;
+        return negative ? retval : -retval;
+    }
+
+    /**
+     * <p>
+     * Indicates if a separator starts at the given index.
+     * </p>
+     *
+     * @param index the index
+     * @return {@code true} if a separator is found, {@code false} otherwise
+     */
+    private boolean isSeparator(final int index) {
+        return index + 1 < end && content.charAt(index) == ',' && content.charAt(index + 1) == ' ';
+    }
+
+    /**
+     * <p>
+     * Builds the exception thrown for a malformed element.
+     * </p>
+     *
+     * @param start the element start
+     * @return the exception
+     */
+    private NumberFormatException error(final int start) {
+        int i = start;
+
+        while (i < end && !isSeparator(i)) {
+            i++;
+        }
+
+        return new NumberFormatException("For input string: \"" + content.subSequence(start, i) + '"');
+    }
+}
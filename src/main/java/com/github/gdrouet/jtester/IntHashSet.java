@@ -0,0 +1,78 @@
+package com.github.gdrouet.jtester;
+
+/**
+ * <p>
+ * A set of primitive integers based on open addressing, to check membership without boxing.
+ * </p>
+ */
+public final class IntHashSet {
+
+    /**
+     * The slots, a power of two in length.
+     */
+    private final int[] slots;
+
+    /**
+     * Indicates which slots are used.
+     */
+    private final boolean[] used;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param expectedSize the maximum number of elements
+     */
+    public IntHashSet(final int expectedSize) {
+        // Keep the load factor under 0.5
+        final int capacity = Integer.highestOneBit(Math.max(expectedSize, 1) * 2 - 1) << 1;
+        slots = new int[capacity];
+        used = new boolean[capacity];
+    }
+
+    /**
+     * <p>
+     * Adds a value.
+     * </p>
+     *
+     * @param value the value
+     */
+    public void add(final int value) {
+        final int i = find(value);
+        slots[i] = value;
+        used[i] = true;
+    }
+
+    /**
+     * <p>
+     * Indicates if the set contains the given value.
+     * </p>
+     *
+     * @param value the value
+     * @return {@code true} if the value has been added, {@code false} otherwise
+     */
+    public boolean contains(final int value) {
+        return used[find(value)];
+    }
+
+    /**
+     * <p>
+     * Finds the slot containing the value or the empty slot where it should be added.
+     * </p>
+     *
+     * @param value the value
+     * @return the slot index
+     */
+    private int find(final int value) {
+        final int mask = slots.length - 1;
+        final int h = value * 0x9E3779B9;
+        int i = (h ^ (h >>> 16)) & mask;
+
+        while (used[i] && slots[i] != value) {
+            i = (i + 1) & mask;
+        }
+
+        return i;
+    }
+}
@@ -2,13 +2,16 @@ package com.github.gdrouet.jtester;
 
 import com.github.wuic.util.IOUtils;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.tools.Diagnostic;
 import javax.tools.DiagnosticCollector;
-import javax.tools.JavaCompiler;
 import javax.tools.JavaFileObject;
-import javax.tools.StandardJavaFileManager;
-import javax.tools.ToolProvider;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -16,25 +19,51 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.lang.reflect.Method;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLClassLoader;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.regex.Matcher;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 
 /**
@@ -56,8 +85,11 @@ public class JTester {
      * with an identified test file containing a 'main' method to execute. The result of the execution must be
      * compared an expected value contained in a dedicated file. This file must be named with the name of the class to test.
      * </p>
+     * <p>
+     * Each execution of the registration is stopped when it exceeds the wall-clock budget or the CPU time budget.
+     * </p>
      */
-    private class Registration {
+    public class Registration {
 
         /**
          * The file to test.
@@ -90,9 +122,39 @@ public class JTester {
         private final Expectation expectationImpl;
 
         /**
-         * Exclude System.out.println not in executor file.
+         * Rewrites the files merged into the source to compile.
+         */
+        private final SourceRewriter rewriter;
+
+        /**
+         * Maximum duration of an execution in nanoseconds.
+         */
+        private long wallBudget;
+
+        /**
+         * Maximum CPU time of an execution in nanoseconds, 0 if unlimited.
+         */
+        private long cpuBudget;
+
+        /**
+         * Maximum number of operations of an execution, 0 if unlimited.
+         */
+        private long operationBudget;
+
+        /**
+         * Number of warm-up executions dropped from the profile, -1 if the executions are not profiled.
+         */
+        private int warmUps;
+
+        /**
+         * The student whose submission is the reference solution, {@code null} if none.
+         */
+        private String reference;
+
+        /**
+         * The profile of the reference solution, {@code null} if not graded yet.
          */
-        private final Boolean excludeSysout;
+        private ExecutionProfile referenceProfile;
 
         /**
          * <p>
@@ -104,21 +166,208 @@ public class JTester {
          * @param s           the test identifier
          * @param expectation the expected result
          * @param environment the file set to compile
-         * @param es          exclude SYSOUT
+         * @param sr          the source rewriter
          */
         private Registration(final File test,
                              final File executor,
                              final String s,
                              final Expectation expectation,
                              final File[] environment,
-                             final Boolean es) {
+                             final SourceRewriter sr) {
             testFile = test;
             step = s;
             testExecutorFile = executor;
             expectationFile = new File(expectationDirectory, expectation.getFile());
             expectationImpl = expectation;
             environmentFiles = environment;
-            excludeSysout = es;
+            rewriter = sr;
+            wallBudget = DEFAULT_WALL_BUDGET;
+            warmUps = -1;
+        }
+
+        /**
+         * <p>
+         * Sets the budgets of each execution. An execution exceeding the wall-clock budget is stopped and reported as
+         * "Timeout", an execution exceeding the CPU time budget is stopped and reported as "CPU". CPU time is measured
+         * for the threads of the execution, in this JVM or in a worker JVM, see
+         * {@link JTester#setIsolation(int, String...)}.
+         * </p>
+         *
+         * @param wall the wall-clock budget, {@link JTester#DEFAULT_WALL_BUDGET} nanoseconds by default
+         * @param cpu the CPU time budget, 0 if unlimited (default)
+         * @param unit the budgets unit
+         * @return this registration
+         */
+        public Registration setBudget(final long wall, final long cpu, final TimeUnit unit) {
+            if (wall <= 0 || cpu < 0) {
+                throw new IllegalArgumentException("Budgets must be positive");
+            }
+
+            wallBudget = unit.toNanos(wall);
+            cpuBudget = unit.toNanos(cpu);
+            return this;
+        }
+
+        /**
+         * <p>
+         * Sets the maximum number of operations of each execution, an operation being a method entry or a loop
+         * iteration. The classes are instrumented to count the operations and an execution exceeding the budget is
+         * stopped and reported as "Budget". Unlike the time budgets, the result does not depend on the load of the
+         * machine.
+         * </p>
+         *
+         * @param operations the budget, 0 if unlimited (default)
+         * @return this registration
+         */
+        public Registration setOperationBudget(final long operations) {
+            if (operations < 0) {
+                throw new IllegalArgumentException("Budget must be positive");
+            }
+
+            operationBudget = operations;
+            return this;
+        }
+
+        /**
+         * <p>
+         * Profiles the executions of each submission whose result is checked. The elapsed time, the CPU time, the
+         * allocated bytes and the output size are reported next to the verdict, the warm-up executions being dropped.
+         * The expectation may reject a submission consuming too much resources compared to the reference solution,
+         * which is reported as "Slow", see {@link Expectation#isProfileExpected(ExecutionProfile, ExecutionProfile)}.
+         * </p>
+         *
+         * @param w the number of first executions dropped, less than the number of executions of the expectation
+         * @param student the student whose submission is the reference solution, {@code null} if none
+         * @return this registration
+         */
+        public Registration setProfiling(final int w, final String student) {
+            if (w < 0 || w >= expectationImpl.getNumberOfExecutions()) {
+                throw new IllegalArgumentException("At least one execution must be measured after the warm-ups");
+            }
+
+            warmUps = w;
+            reference = student;
+            return this;
+        }
+    }
+
+    /**
+     * <p>
+     * A submission is the file of one student tested by a registration. It carries the state produced by each step
+     * from the preparation to the execution.
+     * </p>
+     */
+    private class Submission {
+
+        /**
+         * The registration.
+         */
+        private final Registration registration;
+
+        /**
+         * The student's file.
+         */
+        private final File file;
+
+        /**
+         * The part of file name which represents the class name to test.
+         */
+        private final String fileTest;
+
+        /**
+         * The student name.
+         */
+        private final String student;
+
+        /**
+         * The student's report.
+         */
+        private final Map<Registration, String> line;
+
+        /**
+         * The expected result.
+         */
+        private final String expected;
+
+        /**
+         * The directory containing compilation elements for this registration's test and this student.
+         */
+        private final File env;
+
+        /**
+         * The package isolating the classes of this submission, {@code null} for the default package.
+         */
+        private String packageName;
+
+        /**
+         * The prepared source.
+         */
+        private String source;
+
+        /**
+         * The compiled bytecode, {@code null} if classes are loaded from {@link #env}.
+         */
+        private Map<String, byte[]> classes;
+
+        /**
+         * The resources consumed by the executions, {@code null} if not profiled.
+         */
+        private ExecutionProfile profile;
+
+        /**
+         * Creates the class loaders of the executions, {@code null} when not running.
+         */
+        private ClassLoaderFactory loaders;
+
+        /**
+         * Hash of the inputs of the result, {@code null} if results are not stored.
+         */
+        private String hash;
+
+        /**
+         * The identical submissions of other students sharing the result of this one.
+         */
+        private final List<Submission> duplicates;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param r the registration
+         * @param f the student's file
+         * @param ft the class name to test
+         * @param s the student name
+         * @param l the student's report
+         * @param e the expected result
+         */
+        private Submission(final Registration r,
+                           final File f,
+                           final String ft,
+                           final String s,
+                           final Map<Registration, String> l,
+                           final String e) {
+            registration = r;
+            file = f;
+            fileTest = ft;
+            student = s;
+            line = l;
+            expected = e;
+            env = new File(new File(r.testFile.getParentFile(), r.step), s);
+            duplicates = new ArrayList<>();
+        }
+
+        /**
+         * <p>
+         * Gets the binary name of the class containing the 'main' method.
+         * </p>
+         *
+         * @return the class name
+         */
+        private String getMainClass() {
+            final String executor = registration.testExecutorFile.getName();
+            final String simpleName = executor.substring(0, executor.lastIndexOf('.'));
+            return packageName == null ? simpleName : packageName + '.' + simpleName;
         }
     }
 
@@ -128,6 +377,46 @@ public class JTester {
     public static final Pattern FILE_TO_TEST_PATTERN =
             Pattern.compile("([a-zA-Z]*).?([a-zA-Z]*).?(\\d*?).?([a-zA-Z]*).?([a-zA-Z]*).?(([a-zA-Z0-9]*)(\\.java))");
 
+    /**
+     * Default maximum number of bytes captured for one execution.
+     */
+    public static final int DEFAULT_OUTPUT_LIMIT = 16 * 1024 * 1024;
+
+    /**
+     * Default maximum duration of an execution in nanoseconds.
+     */
+    public static final long DEFAULT_WALL_BUDGET = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * Interval between two checks of the CPU time budget in nanoseconds.
+     */
+    private static final long CPU_POLL = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * Instruments the classes of the registrations having an operation budget.
+     */
+    private static final BytecodeTransformer OPERATION_COUNTER = new OperationCounter();
+
+    /**
+     * Delay in milliseconds without file change before grading the changes in watch mode.
+     */
+    private static final long WATCH_DELAY = 100;
+
+    /**
+     * Number of workers a shard is given to before its cells are reported as "Worker".
+     */
+    private static final int SHARD_ATTEMPTS = 3;
+
+    /**
+     * Time in milliseconds given to a worker to compile a shard and send its results, on top of the executions.
+     */
+    private static final long SHARD_DELAY = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * Size in bytes of the challenge authenticating a worker.
+     */
+    private static final int CHALLENGE = 32;
+
     /**
      * Directory containing files to test.
      */
@@ -149,13 +438,93 @@ public class JTester {
     private final List<Registration> registrations;
 
     /**
-     * Thread pool.
+     * Index of the files to test shared by all the registrations, {@code null} until the first registration.
+     */
+    private SubmissionIndex index;
+
+    /**
+     * Thread pool grading the (registration, student) pairs.
+     */
+    private ExecutorService grading;
+
+    /**
+     * Thread pool running the repeated executions of a submission in parallel.
+     */
+    private ExecutorService repetitions;
+
+    /**
+     * Number of (registration, student) pairs graded at the same time.
+     */
+    private final int workers;
+
+    /**
+     * Standard output dispatching each execution's output to its own buffer.
+     */
+    private final OutputCapture capture;
+
+    /**
+     * Compiler shared by all compilations, which also limits the number of concurrent compilations.
+     */
+    private CompilationService compilation;
+
+    /**
+     * Limits the number of executions running at the same time, {@code null} if limited by the thread pools only.
+     */
+    private Semaphore executions;
+
+    /**
+     * Keep prepared sources and compiled classes in memory instead of the student's directory.
+     */
+    private boolean inMemory;
+
+    /**
+     * Also write in-memory sources and classes to the student's directory for debugging purpose.
+     */
+    private boolean keepFiles;
+
+    /**
+     * Compile all the students of a registration in one compilation task.
+     */
+    private boolean batch;
+
+    /**
+     * Persistent cache of compilation results, {@code null} if disabled.
+     */
+    private CompileCache compileCache;
+
+    /**
+     * Maximum number of bytes captured for one execution.
+     */
+    private int outputLimit;
+
+    /**
+     * Worker JVMs isolating the executions, {@code null} to execute in this JVM.
+     */
+    private SandboxPool sandbox;
+
+    /**
+     * Durable store of the results, {@code null} to keep them in memory only.
+     */
+    private ResultStore store;
+
+    /**
+     * Grade only once the submissions with the same fingerprint.
+     */
+    private boolean deduplicate;
+
+    /**
+     * Metrics of the pipeline, {@code null} if not measured.
      */
-    private final ExecutorService pool;
+    private PipelineMetrics metrics;
+
+    /**
+     * The fingerprint of each student's file for each registration, when deduplication is enabled.
+     */
+    private final Map<Registration, Map<String, String>> fingerprints;
 
     /**
      * <p>
-     * Builds a new instance.
+     * Builds a new instance with a single worker.
      * </p>
      *
      * @param test        test directory
@@ -163,11 +532,35 @@ public class JTester {
      * @param environment environment directory
      */
     public JTester(final File test, final File expectation, final File environment) {
+        this(test, expectation, environment, 1);
+    }
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param test        test directory
+     * @param expectation expectation directory
+     * @param environment environment directory
+     * @param workers     number of (registration, student) pairs graded at the same time
+     */
+    public JTester(final File test, final File expectation, final File environment, final int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("At least one worker is required");
+        }
+
         testDirectory = test;
         expectationDirectory = expectation;
         environmentDirectory = environment;
         registrations = new ArrayList<>();
-        pool = Executors.newSingleThreadExecutor();
+        this.workers = workers;
+        grading = Executors.newFixedThreadPool(workers);
+        repetitions = Executors.newFixedThreadPool(workers);
+        capture = OutputCapture.install();
+        compilation = new CompilationService(workers);
+        outputLimit = DEFAULT_OUTPUT_LIMIT;
+        fingerprints = new ConcurrentHashMap<>();
 
         if (testDirectory.isFile()) {
             throw new IllegalArgumentException(test.toString() + " must be a directory");
@@ -177,158 +570,1665 @@ public class JTester {
     }
 
     /**
-     * Shutdown thread pool
+     * <p>
+     * Keeps prepared sources and compiled classes in memory. Sources are compiled from a string, classes are defined
+     * from the bytecode produced by the compiler and nothing is written to the student's directory unless
+     * {@link #setKeepFiles(boolean)} is enabled.
+     * </p>
+     *
+     * @param m {@code true} to compile in memory, {@code false} to use the student's directory (default)
      */
-    public void shutdown() {
-        pool.shutdown();
+    public void setInMemory(final boolean m) {
+        inMemory = m;
     }
 
     /**
      * <p>
-     * Creates a new test registration.
+     * Writes the prepared source and the compiled classes to the student's directory even in memory mode.
      * </p>
      *
-     * @param endDirectory    the end of directory name containing the files to test with the specified executor
-     * @param executorFile    the source file with main method
-     * @param expectation     the object that checks an expected result
-     * @param excludeSysout   exclude System.out.println() statement not in test executor
-     * @param testClass       some additional classes to satisfy executor/test file dependencies
+     * @param k {@code true} to write the files for debugging purpose, {@code false} otherwise (default)
      */
-    public void addRegistration(final String endDirectory,
-                                final String executorFile,
-                                final Expectation expectation,
-                                final Boolean excludeSysout,
-                                final String... testClass) {
-        // Look for directory with all files related to a particular test
-        for (final File file : testDirectory.listFiles()) {
+    public void setKeepFiles(final boolean k) {
+        keepFiles = k;
+    }
 
-            // Directory found: it ends with the specified string
-            if (file.getName().endsWith(endDirectory)) {
+    /**
+     * <p>
+     * Compiles the sources of all the students of a registration in a single compilation task to pay the compiler
+     * startup only once. Each student's classes are isolated in a dedicated package. This only applies in memory mode,
+     * see {@link #setInMemory(boolean)}.
+     * </p>
+     *
+     * @param b {@code true} to compile each registration in one task, {@code false} to compile each student separately (default)
+     */
+    public void setBatch(final boolean b) {
+        batch = b;
+    }
 
-                // Collect absolute path for files to compile
-                final File[] envFiles = new File[testClass.length];
+    /**
+     * <p>
+     * Sets the cache of compilation results. A submission whose prepared source did not change since a previous
+     * run reuses the cached bytecode or compilation failure instead of being compiled again. When the classes are not
+     * kept in memory, cached bytecode is written to the student's directory.
+     * </p>
+     *
+     * @param cache the cache, {@code null} to always compile (default)
+     */
+    public void setCompileCache(final CompileCache cache) {
+        compileCache = cache;
+    }
 
-                for (int i = 0; i < testClass.length; i++) {
-                    envFiles[i] = new File(environmentDirectory, testClass[i]);
-                }
+    /**
+     * <p>
+     * Sets the maximum number of bytes captured for one execution, line breaks excluded. An execution printing
+     * more is stopped and reported as "Overflow".
+     * </p>
+     *
+     * @param limit the limit, {@link #DEFAULT_OUTPUT_LIMIT} by default
+     */
+    public void setOutputLimit(final int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Output limit must be positive");
+        }
 
-                registrations.add(new Registration(
-                        file,
-                        new File(environmentDirectory, executorFile),
-                        endDirectory,
-                        expectation,
-                        envFiles,
-                        excludeSysout));
-                return;
-            }
+        outputLimit = limit;
+    }
+
+    /**
+     * <p>
+     * Executes the 'main' methods in a pool of worker JVMs instead of this JVM. Each worker is replaced after the
+     * given number of executions or after an execution which did not succeed, a worker exceeding the timeout is
+     * killed. The pool has one worker per grading worker.
+     * </p>
+     *
+     * @param maxRuns the number of executions before a worker JVM is replaced
+     * @param jvmOptions the options of the worker JVMs
+     * @throws IOException if the workers can't be started
+     */
+    public void setIsolation(final int maxRuns, final String... jvmOptions) throws IOException {
+        if (sandbox != null) {
+            sandbox.shutdown();
         }
 
-        throw new IllegalArgumentException();
+        sandbox = new SandboxPool(workers, maxRuns, jvmOptions);
     }
 
     /**
      * <p>
-     * Check if the given argument if in the specified array.
+     * Sets the durable store of the results. Each result is stored as soon as it is known with a hash of its inputs:
+     * the file to test, the executor and environment files, the expected result, the arguments, the expectation, the
+     * rewriter, the budgets, the profiling with the file of the reference solution, the output limit and the isolation.
+     * A result whose inputs did not change since it was stored is not graded again, so an interrupted run can be
+     * resumed. The reference solution of a profiled registration is always graded again since its profile is not
+     * stored. The store is the only holder of the results: the results of the files which are not discovered anymore
+     * are removed from it before grading and the report is printed from it. The store is not closed by
+     * {@link #shutdown()}.
      * </p>
      *
-     * @param args the arguments
-     * @param arg the argument to check
-     * @return {@code true} if argument is activate, {@code false otherwise}
+     * @param s the store, {@code null} to keep the results in memory only (default)
      */
-    public boolean argActivated(final String[] args, final String arg) {
-        return args.length == 0 || Arrays.toString(args).contains(arg);
+    public void setResultStore(final ResultStore s) {
+        store = s;
     }
 
     /**
      * <p>
-     * Scans the testing directory and executed discovered tests.
+     * Grades only once the submissions of a registration whose files have the same {@link SourceFingerprint}, ignoring
+     * whitespace and comments. The result of the first submission is reported for all the students of the group and
+     * nothing is written to the directory of the other students, unless the first submission does not compile: the
+     * line of the compilation error depends on the layout, so each student of the group is graded. The groups are
+     * listed after the report for review. The reference student of a profiled registration is always graded.
      * </p>
      *
-     * @param args arguments for 'main' method of test executor
-     * @throws IOException if test fails
+     * @param d {@code true} to grade identical submissions once, {@code false} to grade each submission (default)
      */
-    public void scanTest(final String[] args) throws IOException {
-        final Map<String, Map<Registration, String>> results = new TreeMap<>();
-        print("Student", 20);
+    public void setDeduplicate(final boolean d) {
+        deduplicate = d;
+    }
 
-        // Execute all registered test for all discovered files to test
-        for (final Registration registration : registrations) {
-            final String executor = registration.testExecutorFile.getName();
-            print(registration.step, 10);
+    /**
+     * <p>
+     * Sets the metrics recording the latency of each stage and the outcome of each graded cell, see
+     * {@link PipelineMetrics}.
+     * </p>
+     *
+     * @param m the metrics, {@code null} to measure nothing (default)
+     */
+    public void setMetrics(final PipelineMetrics m) {
+        metrics = m;
+    }
+
+    /**
+     * <p>
+     * Grades each (registration, student) pair on its own virtual thread instead of a fixed pool of workers, so any
+     * number of pairs can wait for I/O at the same time. The CPU-bound stages are limited separately: the compilations
+     * by the pool of the compiler and the executions of the code under test by a semaphore. Virtual threads require
+     * Java 21, the fixed pools of workers are kept with older versions and only the limits apply. The executions still
+     * run on their own platform thread to be measured and stopped. This must be called before grading.
+     * </p>
+     *
+     * @param maxCompilations the maximum number of concurrent compilations
+     * @param maxExecutions the maximum number of concurrent executions
+     */
+    public void setVirtualThreads(final int maxCompilations, final int maxExecutions) {
+        if (maxCompilations < 1 || maxExecutions < 1) {
+            throw new IllegalArgumentException("At least one compilation and one execution are required");
+        }
+
+        final ExecutorService executor = newVirtualThreadExecutor();
+
+        if (executor != null) {
+            grading.shutdown();
+            repetitions.shutdown();
+            grading = executor;
+            repetitions = executor;
+        }
+
+        compilation.shutdown();
+        compilation = new CompilationService(maxCompilations);
+        executions = new Semaphore(maxExecutions);
+    }
+
+    /**
+     * <p>
+     * Creates an executor starting a virtual thread for each task. The executor is created by reflection so this class
+     * still runs with Java 8.
+     * </p>
+     *
+     * @return the executor, {@code null} if virtual threads are not available
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException roe) {
+            // Missing before Java 19, disabled preview feature before Java 21
+            return null;
+        }
+    }
+
+    /**
+     * Shutdown thread pool
+     */
+    public void shutdown() {
+        grading.shutdown();
+        repetitions.shutdown();
+        compilation.shutdown();
+
+        if (sandbox != null) {
+            sandbox.shutdown();
+        }
+    }
+
+    /**
+     * <p>
+     * Creates a new test registration.
+     * </p>
+     *
+     * @param endDirectory    the end of directory name containing the files to test with the specified executor
+     * @param executorFile    the source file with main method
+     * @param expectation     the object that checks an expected result
+     * @param excludeSysout   exclude System.out.println() statement not in test executor
+     * @param testClass       some additional classes to satisfy executor/test file dependencies
+     * @return the registration
+     */
+    public Registration addRegistration(final String endDirectory,
+                                        final String executorFile,
+                                        final Expectation expectation,
+                                        final Boolean excludeSysout,
+                                        final String... testClass) {
+        return addRegistration(endDirectory, executorFile, expectation, new TokenSourceRewriter(excludeSysout), testClass);
+    }
+
+    /**
+     * <p>
+     * Creates a new test registration with a specific source rewriter.
+     * </p>
+     *
+     * @param endDirectory    the end of directory name containing the files to test with the specified executor
+     * @param executorFile    the source file with main method
+     * @param expectation     the object that checks an expected result
+     * @param rewriter        the rewriter applied to each file merged into the source to compile
+     * @param testClass       some additional classes to satisfy executor/test file dependencies
+     * @return the registration
+     */
+    public Registration addRegistration(final String endDirectory,
+                                        final String executorFile,
+                                        final Expectation expectation,
+                                        final SourceRewriter rewriter,
+                                        final String... testClass) {
+        // Look for directory with all files related to a particular test
+        final File file;
+
+        try {
+            if (index == null) {
+                index = new SubmissionIndex(testDirectory);
+            }
+
+            file = index.findDirectory(endDirectory);
+        } catch (IOException ioe) {
+            throw new IllegalArgumentException(testDirectory + " can't be walked", ioe);
+        }
+
+        // Directory found: it ends with the specified string
+        if (file != null) {
+
+            // Collect absolute path for files to compile
+            final File[] envFiles = new File[testClass.length];
+
+            for (int i = 0; i < testClass.length; i++) {
+                envFiles[i] = new File(environmentDirectory, testClass[i]);
+            }
+
+            final Registration retval = new Registration(
+                    file,
+                    new File(environmentDirectory, executorFile),
+                    endDirectory,
+                    expectation,
+                    envFiles,
+                    rewriter);
+            registrations.add(retval);
+            return retval;
+        }
+
+        throw new IllegalArgumentException();
+    }
+
+    /**
+     * <p>
+     * Check if the given argument if in the specified array.
+     * </p>
+     *
+     * @param args the arguments
+     * @param arg the argument to check
+     * @return {@code true} if argument is activate, {@code false otherwise}
+     */
+    public boolean argActivated(final String[] args, final String arg) {
+        return args.length == 0 || Arrays.toString(args).contains(arg);
+    }
+
+    /**
+     * <p>
+     * Scans the testing directory and executed discovered tests.
+     * </p>
+     *
+     * @param args arguments for 'main' method of test executor
+     * @throws IOException if test fails
+     */
+    public void scanTest(final String[] args) throws IOException {
+        scanTest(args, new ConcurrentSkipListMap<>());
+    }
+
+    /**
+     * <p>
+     * Grades all the discovered tests, then watches the test, expectation and environment directories until the
+     * current thread is interrupted. Each time files change, only the (registration, student) pairs affected by the
+     * changes are graded again and the report is printed again:
+     * <ul>
+     * <li>a file to test affects the registrations of its step for its student</li>
+     * <li>an expectation file affects all the students of the registrations checking it</li>
+     * <li>an environment file affects all the students of the registrations compiling it</li>
+     * </ul>
+     * When the file system lost events, all the pairs are considered affected.
+     * </p>
+     *
+     * @param args arguments for 'main' method of test executor
+     * @throws IOException if test fails
+     * @throws InterruptedException if the current thread is interrupted
+     */
+    public void watch(final String[] args) throws IOException, InterruptedException {
+        final Map<String, Map<Registration, String>> results = new ConcurrentSkipListMap<>();
+
+        try (final WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            final Set<Path> directories = new HashSet<>();
+            directories.add(testDirectory.toPath());
+            directories.add(expectationDirectory.toPath());
+            directories.add(environmentDirectory.toPath());
+
+            for (final Registration registration : registrations) {
+                directories.add(registration.testFile.toPath());
+            }
+
+            for (final Path directory : directories) {
+                directory.register(watcher,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+            }
+
+            // Changes made before the registration of the directories are graded by this first scan
+            scanTest(args, results);
+
+            while (true) {
+                final Set<Path> changed = new HashSet<>();
+                boolean overflow = false;
+                WatchKey key = watcher.take();
+
+                // An editor saving a file triggers several events, wait for the last one
+                while (key != null) {
+                    final Path directory = (Path) key.watchable();
+
+                    for (final WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            // Events have been lost, any file may have changed
+                            overflow = true;
+                        } else if (event.context() instanceof Path) {
+                            changed.add(directory.resolve((Path) event.context()));
+                        }
+                    }
+
+                    key.reset();
+                    key = watcher.poll(WATCH_DELAY, TimeUnit.MILLISECONDS);
+                }
+
+                final List<List<Submission>> submissions = affected(args, overflow ? null : changed, results);
+
+                if (!submissions.isEmpty()) {
+                    gradeAll(args, submissions);
+                    System.out.println();
+                    report(results, store);
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Grades all the discovered tests with worker processes and prints the report. The discovered (registration,
+     * student) cells are split into shards of the given size. Each worker connects to the given address with
+     * {@link #work(String[], InetSocketAddress, String)}, then receives one shard at a time and sends back its results. A
+     * shard is given to another worker when its worker disconnects or does not send the results in time, the time
+     * given to a shard being the wall-clock budget of all its executions plus {@link #SHARD_DELAY}. The cells of a
+     * shard given to {@link #SHARD_ATTEMPTS} workers without results are reported as "Worker". The workers must be
+     * built with the same registrations as the coordinator, the coordinator itself grades nothing and ignores its
+     * result store.
+     * </p>
+     * <p>
+     * A connected worker is authenticated first: the coordinator sends {@link #CHALLENGE} random bytes and the worker
+     * replies with their HMAC-SHA256 keyed by the shared secret, the connection is closed if the reply is wrong. The
+     * protocol then sends a shard as the number of cells followed by the step and the student of each cell, an empty
+     * shard meaning that no work remains. The results are sent back as the number of cells followed by the student, the
+     * step and the result of each cell, then the number of fingerprints followed by the step, the student and the
+     * {@link SourceFingerprint} of each cell when the worker deduplicates the submissions. Results and fingerprints of
+     * cells which are not part of the shard are ignored.
+     * </p>
+     *
+     * @param address the address to listen to, a loopback address to accept local workers only
+     * @param shardSize the maximum number of cells sent to a worker at once
+     * @param secret the secret shared with the workers
+     * @throws IOException if the address can't be bound
+     * @throws InterruptedException if the current thread is interrupted
+     */
+    public void coordinate(final InetSocketAddress address, final int shardSize, final String secret)
+            throws IOException, InterruptedException {
+        final Map<String, Map<Registration, String>> results = new ConcurrentSkipListMap<>();
+        final Map<String, Registration> steps = new HashMap<>();
+        final BlockingQueue<List<String[]>> shards = new LinkedBlockingQueue<>();
+
+        if (index != null) {
+            index.refresh();
+        }
+
+        // Cells of a registration are kept together so a worker can compile them in one batch
+        for (final Registration registration : registrations) {
+            steps.put(registration.step, registration);
+            List<String[]> shard = new ArrayList<>(shardSize);
+
+            for (final SubmissionIndex.Entry entry : index.getEntries(registration.testFile)) {
+                results.computeIfAbsent(entry.getStudent(), k -> new ConcurrentHashMap<>());
+                shard.add(new String[] { registration.step, entry.getStudent() });
+
+                if (shard.size() == shardSize) {
+                    shards.add(shard);
+                    shard = new ArrayList<>(shardSize);
+                }
+            }
+
+            if (!shard.isEmpty()) {
+                shards.add(shard);
+            }
+        }
+
+        final CountDownLatch done = new CountDownLatch(shards.size());
+        final Map<List<String[]>, Integer> attempts = new ConcurrentHashMap<>();
+        final List<Thread> dispatchers = new ArrayList<>();
+        final Thread acceptor;
+
+        try (final ServerSocket server = new ServerSocket()) {
+            server.bind(address);
+
+            acceptor = new Thread(() -> {
+                while (!server.isClosed()) {
+                    try {
+                        final Socket socket = server.accept();
+                        final Thread connection = new Thread(() -> dispatch(socket, secret, shards, attempts, done, steps, results),
+                                "shard-dispatcher");
+                        connection.setDaemon(true);
+
+                        synchronized (dispatchers) {
+                            dispatchers.add(connection);
+                        }
+
+                        connection.start();
+                    } catch (IOException ioe) {
+                        // Server closed, all the shards are graded
+                    }
+                }
+            }, "shard-acceptor");
+            acceptor.setDaemon(true);
+            acceptor.start();
+            done.await();
+        }
+
+        // Let each worker receive the end of the work
+        acceptor.join();
+
+        for (final Thread dispatcher : dispatchers) {
+            dispatcher.join();
+        }
+
+        report(results, null);
+    }
+
+    /**
+     * <p>
+     * Sends shards to a connected worker until all the shards are graded and merges the results into the report. The
+     * shard of a worker which fails is given back to the other workers, or reported as "Worker" after
+     * {@link #SHARD_ATTEMPTS} failures.
+     * </p>
+     *
+     * @param socket the connection to the worker
+     * @param secret the secret shared with the workers
+     * @param shards the shards to grade
+     * @param attempts the number of workers which failed to grade each shard
+     * @param done counts down the graded shards
+     * @param steps the registration of each step
+     * @param results the report
+     */
+    private void dispatch(final Socket socket,
+                          final String secret,
+                          final BlockingQueue<List<String[]>> shards,
+                          final Map<List<String[]>, Integer> attempts,
+                          final CountDownLatch done,
+                          final Map<String, Registration> steps,
+                          final Map<String, Map<Registration, String>> results) {
+        List<String[]> shard = null;
+
+        try (final Socket s = socket) {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            final byte[] challenge = new byte[CHALLENGE];
+            new SecureRandom().nextBytes(challenge);
+            out.write(challenge);
+            out.flush();
+            s.setSoTimeout((int) SHARD_DELAY);
+            final byte[] response = new byte[CHALLENGE];
+            in.readFully(response);
+
+            // Not a worker sharing the secret
+            if (!MessageDigest.isEqual(response, authenticate(secret, challenge))) {
+                return;
+            }
+
+            // A shard given back by a disconnected worker may still arrive
+            while (done.getCount() > 0) {
+                shard = shards.poll(WATCH_DELAY, TimeUnit.MILLISECONDS);
+
+                if (shard == null) {
+                    continue;
+                }
+
+                out.writeInt(shard.size());
+                long timeout = SHARD_DELAY;
+                final Set<String> expected = new HashSet<>();
+
+                for (final String[] cell : shard) {
+                    out.writeUTF(cell[0]);
+                    out.writeUTF(cell[1]);
+                    expected.add(cell[0] + '\0' + cell[1]);
+
+                    final Registration registration = steps.get(cell[0]);
+                    timeout += TimeUnit.NANOSECONDS.toMillis(
+                            registration.wallBudget * registration.expectationImpl.getNumberOfExecutions());
+                }
+
+                out.flush();
+                s.setSoTimeout((int) Math.min(timeout, Integer.MAX_VALUE));
+
+                final List<String[]> cells = new ArrayList<>();
+
+                for (int i = in.readInt(); i > 0; i--) {
+                    cells.add(new String[] { in.readUTF(), in.readUTF(), in.readUTF() });
+                }
+
+                final List<String[]> prints = new ArrayList<>();
+
+                for (int i = in.readInt(); i > 0; i--) {
+                    prints.add(new String[] { in.readUTF(), in.readUTF(), in.readUTF() });
+                }
+
+                // The whole shard has been received
+                for (final String[] cell : cells) {
+                    if (expected.contains(cell[1] + '\0' + cell[0])) {
+                        results.computeIfAbsent(cell[0], k -> new ConcurrentHashMap<>()).put(steps.get(cell[1]), cell[2]);
+                    }
+                }
+
+                for (final String[] print : prints) {
+                    if (expected.contains(print[0] + '\0' + print[1])) {
+                        fingerprints.computeIfAbsent(steps.get(print[0]), k -> new ConcurrentHashMap<>()).put(print[1], print[2]);
+                    }
+                }
+
+                shard = null;
+                done.countDown();
+            }
+
+            out.writeInt(0);
+            out.flush();
+        } catch (IOException | InterruptedException e) {
+            // The worker is gone or stuck, another worker grades its shard
+            if (shard != null) {
+                if (attempts.merge(shard, 1, Integer::sum) < SHARD_ATTEMPTS) {
+                    shards.add(shard);
+                } else {
+                    for (final String[] cell : shard) {
+                        results.computeIfAbsent(cell[1], k -> new ConcurrentHashMap<>()).put(steps.get(cell[0]), "Worker");
+                    }
+
+                    done.countDown();
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Computes the response of a worker to the challenge of a coordinator.
+     * </p>
+     *
+     * @param secret the secret shared by the coordinator and the workers
+     * @param challenge the challenge
+     * @return the HMAC-SHA256 of the challenge
+     */
+    private static byte[] authenticate(final String secret, final byte[] challenge) {
+        try {
+            final Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return mac.doFinal(challenge);
+        } catch (GeneralSecurityException gse) {
+            throw new IllegalStateException(gse);
+        }
+    }
+
+    /**
+     * <p>
+     * Grades the shards sent by a coordinator started with {@link #coordinate(InetSocketAddress, int, String)} until
+     * it has no more work. The results of each shard are sent back once the shard is graded, with the fingerprints of
+     * its submissions if they are deduplicated.
+     * </p>
+     *
+     * @param args arguments for 'main' method of test executor
+     * @param coordinator the address of the coordinator
+     * @param secret the secret shared with the coordinator
+     * @throws IOException if test fails or if the connection is lost
+     */
+    public void work(final String[] args, final InetSocketAddress coordinator, final String secret) throws IOException {
+        final Map<String, Registration> steps = new HashMap<>();
+
+        for (final Registration registration : registrations) {
+            steps.put(registration.step, registration);
+        }
+
+        if (index != null) {
+            index.refresh();
+        }
+
+        try (final Socket socket = new Socket(coordinator.getAddress(), coordinator.getPort())) {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            final byte[] challenge = new byte[CHALLENGE];
+            in.readFully(challenge);
+            out.write(authenticate(secret, challenge));
+            out.flush();
+
+            for (int size = in.readInt(); size > 0; size = in.readInt()) {
+                final Map<Registration, Set<String>> shard = new LinkedHashMap<>();
+
+                for (int i = 0; i < size; i++) {
+                    final Registration registration = steps.get(in.readUTF());
+                    final String student = in.readUTF();
+
+                    if (registration != null) {
+                        shard.computeIfAbsent(registration, k -> new HashSet<>()).add(student);
+                    }
+                }
+
+                // The reference solution is graded by each worker before the first shard it profiles
+                for (final Map.Entry<Registration, Set<String>> cells : shard.entrySet()) {
+                    final Registration registration = cells.getKey();
+
+                    if (registration.warmUps >= 0 && registration.reference != null && registration.referenceProfile == null) {
+                        cells.getValue().add(registration.reference);
+                    }
+                }
+
+                final Map<String, Map<Registration, String>> results = new ConcurrentSkipListMap<>();
+                final List<List<Submission>> submissions = new ArrayList<>();
+
+                for (final Map.Entry<Registration, Set<String>> cells : shard.entrySet()) {
+                    final List<SubmissionIndex.Entry> entries = new ArrayList<>();
+
+                    for (final SubmissionIndex.Entry entry : index.getEntries(cells.getKey().testFile)) {
+                        if (cells.getValue().contains(entry.getStudent())) {
+                            entries.add(entry);
+                        }
+                    }
+
+                    submissions.add(collect(args, cells.getKey(), entries, results));
+                }
+
+                gradeAll(args, submissions);
+                final List<String[]> cells = new ArrayList<>();
+
+                for (final Map.Entry<String, Map<Registration, String>> line : results.entrySet()) {
+                    for (final Map.Entry<Registration, String> cell : line.getValue().entrySet()) {
+                        cells.add(new String[] { line.getKey(), cell.getKey().step, cell.getValue() });
+                    }
+                }
+
+                out.writeInt(cells.size());
+
+                for (final String[] cell : cells) {
+                    out.writeUTF(cell[0]);
+                    out.writeUTF(cell[1]);
+                    out.writeUTF(cell[2]);
+                }
+
+                // The coordinator lists the duplicates of all the shards
+                final List<String[]> prints = new ArrayList<>();
+
+                for (final Map.Entry<Registration, Set<String>> c : shard.entrySet()) {
+                    final Map<String, String> fingerprint = fingerprints.getOrDefault(c.getKey(), Collections.emptyMap());
+
+                    for (final String student : c.getValue()) {
+                        if (fingerprint.containsKey(student)) {
+                            prints.add(new String[] { c.getKey().step, student, fingerprint.get(student) });
+                        }
+                    }
+                }
+
+                out.writeInt(prints.size());
+
+                for (final String[] print : prints) {
+                    out.writeUTF(print[0]);
+                    out.writeUTF(print[1]);
+                    out.writeUTF(print[2]);
+                }
+
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Grades all the discovered tests and keeps the results in the given report, or in the store only if results are
+     * stored.
+     * </p>
+     *
+     * @param args arguments for 'main' method of test executor
+     * @param results the report
+     * @throws IOException if test fails
+     */
+    private void scanTest(final String[] args, final Map<String, Map<Registration, String>> results) throws IOException {
+        // Take into account the files changed since the registrations
+        if (index != null) {
+            index.refresh();
+        }
+
+        prune(results);
+
+        // Submit all registered test for all discovered files to test
+        final List<List<Submission>> submissions = new ArrayList<>();
+
+        for (final Registration registration : registrations) {
+            submissions.add(collect(args, registration, index.getEntries(registration.testFile), store == null ? results : null));
+        }
+
+        gradeAll(args, submissions);
+        report(results, store);
+    }
+
+    /**
+     * <p>
+     * Collects the submissions affected by changed files. The results of the files deleted or renamed since the last
+     * refresh are removed.
+     * </p>
+     *
+     * @param args arguments for 'main' method of test executor
+     * @param changed the changed files, {@code null} if any file may have changed
+     * @param results the report
+     * @return the submissions of each registration, empty if no submission is affected
+     * @throws IOException if I/O error occurs
+     */
+    private List<List<Submission>> affected(final String[] args,
+                                            final Set<Path> changed,
+                                            final Map<String, Map<Registration, String>> results)
+            throws IOException {
+        final List<List<Submission>> retval = new ArrayList<>();
+
+        if (index == null) {
+            return retval;
+        }
+
+        final List<SubmissionIndex.Entry> entries = index.refresh();
+        prune(results);
+
+        for (final Registration registration : registrations) {
+            boolean all = changed == null
+                    || changed.contains(registration.expectationFile.toPath())
+                    || changed.contains(registration.testExecutorFile.toPath());
+
+            for (int i = 0; !all && i < registration.environmentFiles.length; i++) {
+                all = changed.contains(registration.environmentFiles[i].toPath());
+            }
+
+            final List<SubmissionIndex.Entry> affected = new ArrayList<>();
+
+            if (all) {
+                affected.addAll(index.getEntries(registration.testFile));
+            } else {
+                for (final SubmissionIndex.Entry entry : entries) {
+                    if (entry.getFile().getParentFile().equals(registration.testFile)) {
+                        affected.add(entry);
+                    }
+                }
+            }
+
+            if (!affected.isEmpty()) {
+                retval.add(collect(args, registration, affected, store == null ? results : null));
+            }
+        }
+
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Removes the results of the students whose file has not been discovered, because it has been deleted or renamed,
+     * from the report or from the store if results are stored.
+     * </p>
+     *
+     * @param results the report
+     * @throws IOException if the store can't be written
+     */
+    private void prune(final Map<String, Map<Registration, String>> results) throws IOException {
+        if (index == null) {
+            return;
+        }
+
+        for (final Registration registration : registrations) {
+            final Set<String> students = new HashSet<>();
+
+            for (final SubmissionIndex.Entry entry : index.getEntries(registration.testFile)) {
+                students.add(entry.getStudent());
+            }
+
+            if (store != null) {
+                store.retain(registration.step, students);
+            }
+
+            for (final Map.Entry<String, Map<Registration, String>> line : results.entrySet()) {
+                if (!students.contains(line.getKey())) {
+                    line.getValue().remove(registration);
+                }
+            }
+
+            fingerprints.getOrDefault(registration, Collections.emptyMap()).keySet().retainAll(students);
+        }
+
+        results.values().removeIf(Map::isEmpty);
+    }
+
+    /**
+     * <p>
+     * Builds the submissions of a registration. When results are stored, the submissions whose result is already
+     * stored for the same inputs are not built and the stored result is reported. When deduplication is enabled, a
+     * submission with the same fingerprint as a previous one is not built but attached to it as a duplicate.
+     * </p>
+     *
+     * @param args arguments for 'main' method of test executor
+     * @param registration the registration
+     * @param entries the files to test
+     * @param results the report where each submission reports its result, {@code null} to keep the results in the
+     * store only
+     * @return the submissions
+     * @throws IOException if the expected result can't be loaded
+     */
+    private List<Submission> collect(final String[] args,
+                                     final Registration registration,
+                                     final List<SubmissionIndex.Entry> entries,
+                                     final Map<String, Map<Registration, String>> results) throws IOException {
+        final List<Submission> retval = new ArrayList<>(entries.size());
+
+        // Load expected result into a string for future comparison
+        final String expected = Expectation.load(registration.expectationFile);
+
+        // Inputs shared by all the students
+        final byte[] shared = store == null ? null : inputs(args, registration, expected);
+        final Map<String, String> fingerprint = fingerprints.computeIfAbsent(registration, k -> new ConcurrentHashMap<>());
+        final Map<String, Submission> graded = new HashMap<>();
+
+        for (final SubmissionIndex.Entry entry : entries) {
+            // Report any failure
+            final Map<Registration, String> line = results == null ?
+                    new ConcurrentHashMap<>() : results.computeIfAbsent(entry.getStudent(), k -> new ConcurrentHashMap<>());
+            final Submission submission = new Submission(registration, entry.getFile(), entry.getFileTest(), entry.getStudent(), line, expected);
+            final byte[] content = store != null || deduplicate ? Files.readAllBytes(entry.getFile().toPath()) : null;
+
+            // Fingerprint every file, including the stored ones, to report all the groups
+            final String key = deduplicate ? SourceFingerprint.of(entry.getFileTest(), new String(content)) : null;
+
+            if (key != null) {
+                fingerprint.put(entry.getStudent(), key);
+            }
+
+            if (store != null) {
+                submission.hash = ResultStore.hash(shared, content);
+
+                // The profile of the reference solution is not stored, it is graded again
+                final String stored = registration.warmUps >= 0 && entry.getStudent().equals(registration.reference) ?
+                        null : store.get(entry.getStudent(), registration.step, submission.hash);
+
+                if (stored != null) {
+                    line.put(registration, stored);
+                    continue;
+                }
+            }
+
+            if (key != null && !entry.getStudent().equals(registration.reference)) {
+                final Submission first = graded.putIfAbsent(key, submission);
+
+                if (first != null) {
+                    first.duplicates.add(submission);
+                    continue;
+                }
+            }
+
+            retval.add(submission);
+        }
+
+        if (metrics != null) {
+            int cells = retval.size();
+
+            for (final Submission submission : retval) {
+                cells += submission.duplicates.size();
+            }
+
+            metrics.submitted(cells);
+        }
+
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Hashes the inputs of a registration shared by all the students.
+     * </p>
+     *
+     * @param args arguments for 'main' method of test executor
+     * @param registration the registration
+     * @param expected the expected result
+     * @return the hash
+     * @throws IOException if a file can't be read
+     */
+    private byte[] inputs(final String[] args, final Registration registration, final String expected) throws IOException {
+        final byte[][] inputs = new byte[registration.environmentFiles.length + 5][];
+        inputs[0] = String.join("\0", args).getBytes(StandardCharsets.UTF_8);
+        inputs[1] = expected.getBytes(StandardCharsets.UTF_8);
+        inputs[2] = Files.readAllBytes(registration.testExecutorFile.toPath());
+
+        // Options changing the verdict
+        inputs[3] = String.join("\0",
+                registration.expectationImpl.getClass().getName(),
+                registration.rewriter == null ? "" : registration.rewriter.getClass().getName(),
+                String.valueOf(registration.wallBudget),
+                String.valueOf(registration.cpuBudget),
+                String.valueOf(registration.operationBudget),
+                String.valueOf(registration.warmUps),
+                String.valueOf(registration.reference),
+                String.valueOf(outputLimit),
+                sandbox == null ? "thread" : "process").getBytes(StandardCharsets.UTF_8);
+
+        // Profiles are compared to the reference solution
+        inputs[4] = new byte[0];
+
+        if (registration.warmUps >= 0) {
+            for (final SubmissionIndex.Entry entry : index.getEntries(registration.testFile)) {
+                if (entry.getStudent().equals(registration.reference)) {
+                    inputs[4] = Files.readAllBytes(entry.getFile().toPath());
+                }
+            }
+        }
+
+        for (int i = 0; i < registration.environmentFiles.length; i++) {
+            inputs[i + 5] = Files.readAllBytes(registration.environmentFiles[i].toPath());
+        }
+
+        return ResultStore.hash(inputs).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * <p>
+     * Reports the result of a submission to its duplicates, stores it if results are stored and counts it if metrics
+     * are recorded. This is called once the final result is known. A compilation failure is not reported to the
+     * duplicates, which must be graded.
+     * </p>
+     *
+     * @param submission the submission
+     * @throws IOException if the result can't be stored
+     */
+    private void record(final Submission submission) throws IOException {
+        final String cell = submission.line.get(submission.registration);
+
+        if (cell == null) {
+            return;
+        }
+
+        final List<Submission> duplicates = isCompilationFailure(submission) ? Collections.emptyList() : submission.duplicates;
+
+        for (final Submission duplicate : duplicates) {
+            duplicate.line.put(duplicate.registration, cell);
+        }
+
+        if (metrics != null) {
+            for (int i = 0; i <= duplicates.size(); i++) {
+                metrics.completed(submission.registration.step, cell);
+            }
+        }
+
+        if (store != null) {
+            store.put(submission.student, submission.registration.step, submission.hash, cell);
+
+            for (final Submission duplicate : duplicates) {
+                store.put(duplicate.student, duplicate.registration.step, duplicate.hash, cell);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Indicates if a graded submission failed to compile.
+     * </p>
+     *
+     * @param submission the submission
+     * @return {@code true} if the result is the line of a compilation error
+     */
+    private static boolean isCompilationFailure(final Submission submission) {
+        final String cell = submission.line.get(submission.registration);
+        return cell != null && cell.startsWith("L.");
+    }
+
+    /**
+     * <p>
+     * Grades submissions and waits for the results.
+     * </p>
+     *
+     * @param args arguments for 'main' method of test executor
+     * @param submissions the submissions of each registration
+     * @throws IOException if test fails
+     */
+    private void gradeAll(final String[] args, final List<List<Submission>> submissions) throws IOException {
+        final List<Future<?>> cells = new ArrayList<>();
+        final boolean batchCompile = batch && inMemory && argActivated(args, "compile");
+        final List<Submission> all = new ArrayList<>();
+        final List<Submission> references = new ArrayList<>();
+
+        // The reference solutions are graded first so each profiled result is final as soon as it is known
+        for (final List<Submission> group : submissions) {
+            for (final Submission submission : group) {
+                if (submission.registration.warmUps >= 0 && submission.student.equals(submission.registration.reference)) {
+                    references.add(submission);
+                    cells.add(grading.submit(() -> {
+                        grade(args, submission);
+                        return null;
+                    }));
+                } else {
+                    all.add(submission);
+                }
+            }
+        }
+
+        await(cells);
+        cells.clear();
+
+        for (final Submission submission : references) {
+            if (submission.profile != null) {
+                submission.registration.referenceProfile = submission.profile;
+            }
+        }
+
+        for (final Submission submission : references) {
+            profile(submission);
+            record(submission);
+        }
+
+        for (final List<Submission> g : submissions) {
+            final List<Submission> group = new ArrayList<>(g);
+            group.removeAll(references);
+
+            if (group.isEmpty()) {
+                continue;
+            }
+
+            if (batchCompile) {
+                cells.add(grading.submit(() -> {
+                    compile(args, group);
+
+                    // Compilation failures are known
+                    for (final Submission submission : group) {
+                        if (submission.classes == null) {
+                            record(submission);
+                        }
+                    }
+
+                    return null;
+                }));
+            } else {
+                for (final Submission submission : group) {
+                    cells.add(grading.submit(() -> {
+                        grade(args, submission);
+                        profile(submission);
+                        record(submission);
+                        return null;
+                    }));
+                }
+            }
+        }
+
+        if (batchCompile) {
+            // Executions are submitted once each registration is compiled
+            await(cells);
+            cells.clear();
+
+            for (final Submission submission : all) {
+                if (submission.classes != null) {
+                    cells.add(grading.submit(() -> {
+                        run(args, submission);
+                        profile(submission);
+                        record(submission);
+                        return null;
+                    }));
+                }
+            }
+        }
+
+        await(cells);
+        cells.clear();
+
+        // Identical sources may fail to compile at different lines, each student is graded
+        for (final Submission submission : all) {
+            if (isCompilationFailure(submission)) {
+                for (final Submission duplicate : submission.duplicates) {
+                    cells.add(grading.submit(() -> {
+                        grade(args, duplicate);
+                        profile(duplicate);
+                        record(duplicate);
+                        return null;
+                    }));
+                }
+            }
+        }
+
+        await(cells);
+
+        if (compileCache != null) {
+            compileCache.save();
+        }
+    }
+
+    /**
+     * <p>
+     * Prints the report.
+     * </p>
+     *
+     * @param results the result of each registration for each student
+     * @param source the store printed instead of the results, {@code null} to print the results
+     */
+    private void report(final Map<String, Map<Registration, String>> results, final ResultStore source) {
+        print("Student", 20);
+
+        for (final Registration registration : registrations) {
+            print(registration.step, 10);
+        }
+
+        // Print reported result
+        if (source != null) {
+            source.forEach((student, cells) -> {
+                // A student with results of steps not registered anymore only is not reported
+                for (final Registration r : registrations) {
+                    if (cells.containsKey(r.step)) {
+                        report(student, c -> cells.get(c.step));
+                        return;
+                    }
+                }
+            });
+        } else {
+            for (final Map.Entry<String, Map<Registration, String>> entry : results.entrySet()) {
+                report(entry.getKey(), entry.getValue()::get);
+            }
+        }
+
+        System.out.println();
+
+        // Statistics are not part of the report
+        if (compilation.getCompilations() > 0) {
+            System.err.printf("%d compilations of %d sources, %.1f ms per source on average%n",
+                    compilation.getCompilations(),
+                    compilation.getUnits(),
+                    compilation.getAverageLatency(TimeUnit.MILLISECONDS));
+        }
+
+        final long metaspace = ClassLoaderFactory.getMetaspaceUsed();
+
+        if (metaspace >= 0) {
+            System.err.printf("%.1f MB of metaspace used%n", metaspace / (1024d * 1024d));
+        }
+
+        // Students sharing the same fingerprint, for plagiarism review
+        for (final Registration r : registrations) {
+            final Map<String, Set<String>> groups = new TreeMap<>();
+
+            for (final Map.Entry<String, String> f : fingerprints.getOrDefault(r, Collections.emptyMap()).entrySet()) {
+                groups.computeIfAbsent(f.getValue(), k -> new TreeSet<>()).add(f.getKey());
+            }
+
+            for (final Set<String> group : groups.values()) {
+                if (group.size() > 1) {
+                    System.out.printf("%s duplicates: %s%n", r.step, String.join(", ", group));
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Prints the line of a student in the report.
+     * </p>
+     *
+     * @param student the student
+     * @param cells gets the result of each registration, {@code null} if missing
+     */
+    private void report(final String student, final Function<Registration, String> cells) {
+        System.out.println();
+        print(student, 20);
+
+        for (final Registration r : registrations) {
+            final String cell = cells.apply(r);
+            print(cell != null ? cell : "missing", 10);
+        }
+    }
+
+    /**
+     * <p>
+     * Prepares, compiles and executes the test of a registration for one student.
+     * </p>
+     *
+     * @param args arguments for 'main' method of test executor
+     * @param submission the student's submission
+     * @throws IOException if test fails
+     */
+    private void grade(final String[] args, final Submission submission) throws IOException {
+        prepare(args, submission);
+
+        if (argActivated(args, "compile") && !compile(submission)) {
+            return;
+        }
+
+        run(args, submission);
+    }
+
+    /**
+     * <p>
+     * Prepares the source of a submission if the step is activated. In memory mode, a source prepared by a previous
+     * run is read from the student's directory when the step is not activated.
+     * </p>
+     *
+     * @param args arguments for 'main' method of test executor
+     * @param submission the student's submission
+     * @throws IOException if I/O error occurs
+     */
+    private void prepare(final String[] args, final Submission submission) throws IOException {
+        final File path = new File(submission.env, submission.registration.testExecutorFile.getName());
+
+        if (argActivated(args, "prepare")) {
+            final long start = System.nanoTime();
+            submission.source = merge(submission.registration, submission.fileTest, submission.file);
+            measure(submission.registration, PipelineMetrics.Stage.PREPARE, start);
+
+            if (!inMemory || keepFiles) {
+                write(path, submission.source.getBytes());
+            }
+        } else if (inMemory) {
+            submission.source = new String(Files.readAllBytes(path.toPath()));
+        }
+    }
+
+    /**
+     * <p>
+     * Compiles a prepared submission, in memory or into the student's directory.
+     * </p>
+     *
+     * @param submission the student's submission
+     * @return {@code true} in case of success, {@code false} otherwise
+     * @throws IOException if I/O error occurs
+     */
+    private boolean compile(final Submission submission) throws IOException {
+        final String executor = submission.registration.testExecutorFile.getName();
+        final File path = new File(submission.env, executor);
+
+        if (!inMemory && compileCache == null) {
+            return compile(submission.env, submission.line, submission.registration, path);
+        }
+
+        final String source = submission.source == null ? new String(Files.readAllBytes(path.toPath())) : submission.source;
+        final Map<String, byte[]> classes = compile(source, submission.line, submission.registration, executor);
+
+        if (classes == null) {
+            return false;
+        }
+
+        // Without in memory mode, the classes are loaded from the student's directory
+        if (inMemory) {
+            submission.classes = classes;
+            keepClasses(submission);
+        } else {
+            for (final Map.Entry<String, byte[]> c : classes.entrySet()) {
+                write(new File(submission.env, c.getKey().replace('.', File.separatorChar) + ".class"), c.getValue());
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * <p>
+     * Prepares and compiles all the submissions of a registration in one compilation task. Each submission is
+     * isolated in its own package and the compilation errors are reported to the student they belong to.
+     * Compilation is repeated without the failing students because javac generates nothing when an error occurs.
+     * </p>
+     *
+     * @param args arguments for 'main' method of test executor
+     * @param submissions the submissions of one registration
+     * @throws IOException if I/O error occurs
+     */
+    private void compile(final String[] args, final List<Submission> submissions) throws IOException {
+        final Map<JavaFileObject, Submission> units = new LinkedHashMap<>();
+        final Map<Submission, String> keys = new HashMap<>();
+        final Set<String> packages = new HashSet<>();
+
+        for (final Submission submission : submissions) {
+            prepare(args, submission);
+
+            // Student names are letters only, a prefix makes a valid identifier
+            String packageName = "jtester.s_" + submission.student;
+
+            for (int i = 1; !packages.add(packageName); i++) {
+                packageName = "jtester.s_" + submission.student + '_' + i;
+            }
+
+            // Package declaration does not shift the line numbers reported in diagnostics
+            final String source = "package " + packageName + ";" + submission.source;
+            submission.packageName = packageName;
+
+            if (compileCache != null) {
+                final String key = compileCache.key(source, null);
+                final CompileCache.Entry entry = compileCache.get(key);
+
+                if (entry != null && entry.getFailure() != null) {
+                    submission.line.put(submission.registration, entry.getFailure());
+                    continue;
+                } else if (entry != null) {
+                    submission.classes = entry.getClasses();
+                    keepClasses(submission);
+                    continue;
+                }
+
+                keys.put(submission, key);
+            }
+
+            units.put(new MemorySource(submission.getMainClass(), source), submission);
+        }
+
+        while (!units.isEmpty()) {
+            final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+            final long start = System.nanoTime();
+            final Map<String, byte[]> classes = compilation.compile(new ArrayList<>(units.keySet()), null, diagnostics);
+            measure(submissions.get(0).registration, PipelineMetrics.Stage.COMPILE, start);
+
+            if (classes != null) {
+                // Dispatch the bytecode to each student
+                for (final Submission submission : units.values()) {
+                    submission.classes = new HashMap<>();
+                }
+
+                for (final Map.Entry<String, byte[]> c : classes.entrySet()) {
+                    final String packageName = c.getKey().substring(0, c.getKey().lastIndexOf('.'));
+
+                    for (final Submission submission : units.values()) {
+                        if (packageName.equals(submission.packageName)) {
+                            submission.classes.put(c.getKey(), c.getValue());
+                        }
+                    }
+                }
+
+                for (final Submission submission : units.values()) {
+                    keepClasses(submission);
+
+                    if (compileCache != null) {
+                        compileCache.putClasses(keys.get(submission), submission.classes);
+                    }
+                }
+
+                return;
+            }
+
+            // Report the first error of each failing student and compile the others again
+            boolean failure = false;
+
+            for (final JavaFileObject unit : new ArrayList<>(units.keySet())) {
+                final String cell = failure(diagnostics, unit);
+
+                if (cell != null) {
+                    final Submission submission = units.remove(unit);
+                    submission.line.put(submission.registration, cell);
+                    failure = true;
+
+                    if (compileCache != null) {
+                        compileCache.putFailure(keys.get(submission), cell);
+                    }
+                }
+            }
+
+            // Error not related to a particular source, fallback to one compilation per student
+            if (!failure) {
+                for (final Submission submission : units.values()) {
+                    submission.packageName = null;
+                    compile(submission);
+                }
+
+                return;
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Gets the result reporting a compilation failure: the line of the first error, warnings being ignored since they
+     * don't prevent the compilation.
+     * </p>
+     *
+     * @param diagnostics the diagnostics of the compilation
+     * @param source the source whose errors are reported, {@code null} for any source
+     * @return the result, {@code null} if the given source has no error, the result of an error without position if
+     * no source is given and no error is reported
+     */
+    private static String failure(final DiagnosticCollector<JavaFileObject> diagnostics, final JavaFileObject source) {
+        for (final Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR && (source == null || source.equals(diagnostic.getSource()))) {
+                return String.format("L.%d", diagnostic.getLineNumber());
+            }
+        }
+
+        return source == null ? String.format("L.%d", Diagnostic.NOPOS) : null;
+    }
+
+    /**
+     * <p>
+     * Writes the compiled classes of a submission to the student's directory if files must be kept.
+     * </p>
+     *
+     * @param submission the student's submission
+     * @throws IOException if I/O error occurs
+     */
+    private void keepClasses(final Submission submission) throws IOException {
+        if (keepFiles) {
+            for (final Map.Entry<String, byte[]> c : submission.classes.entrySet()) {
+                write(new File(submission.env, c.getKey().replace('.', File.separatorChar) + ".class"), c.getValue());
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Executes a compiled submission and reports the result. When the expectation requires several executions, they
+     * run in parallel, each one with its own class loader, unless they are profiled. The remaining executions are
+     * skipped as soon as the expectation is decided.
+     * </p>
+     *
+     * @param args arguments for 'main' method of test executor
+     * @param submission the student's submission
+     */
+    private void run(final String[] args, final Submission submission) {
+        final Registration registration = submission.registration;
+        final ExecutionResult[] results = new ExecutionResult[registration.expectationImpl.getNumberOfExecutions()];
+
+        // Bytecode is read and instrumented once for all the executions
+        try {
+            final long start = System.nanoTime();
+            submission.loaders = loaders(submission.env, submission.classes, registration);
+            measure(registration, PipelineMetrics.Stage.LOAD, start);
+        } catch (IOException ioe) {
+            submission.line.put(registration, "CNFE");
+            return;
+        }
+
+        // Profiled executions must not compete with each other
+        final ExecutionResult failure;
+
+        try {
+            failure = results.length > 1 && registration.warmUps < 0 ?
+                    runInParallel(args, submission, results) : runSequentially(args, submission, results);
+        } finally {
+            submission.loaders = null;
+        }
+
+        if (failure != null) {
+            submission.line.put(registration, failure.getStatus());
+            return;
+        }
+
+        final List<ExecutionResult> executions = new ArrayList<>(results.length);
+
+        for (final ExecutionResult execution : results) {
+            if (execution != null) {
+                executions.add(execution);
+            }
+        }
+
+        final String[] result = outputs(executions);
+        final long start = System.nanoTime();
+        final boolean expected = registration.expectationImpl.isResultExpected(submission.expected, result);
+        measure(registration, PipelineMetrics.Stage.MATCH, start);
+
+        if (registration.warmUps >= 0) {
+            submission.profile = new ExecutionProfile(executions, registration.warmUps);
+        }
+
+        // Report result
+        submission.line.put(registration, String.valueOf(expected));
+    }
+
+    /**
+     * <p>
+     * Executes a submission once per expected result, one execution after the other.
+     * </p>
+     *
+     * @param args arguments for 'main' method of test executor
+     * @param submission the student's submission
+     * @param results the result of each execution, {@code null} if skipped
+     * @return the first failed execution, {@code null} if all executions succeeded
+     */
+    private ExecutionResult runSequentially(final String[] args, final Submission submission, final ExecutionResult[] results) {
+        final Registration registration = submission.registration;
+        final List<ExecutionResult> executions = new ArrayList<>(results.length);
+
+        for (int i = 0; i < results.length; i++)  {
+            final ExecutionResult execution = launch(args,
+                    submission.loaders,
+                    registration,
+                    submission.getMainClass(),
+                    submission.expected);
+
+            if (!execution.isSuccess()) {
+                return execution;
+            }
 
-            // Load expected result into a string for future comparison
-            final String expected;
+            results[i] = execution;
+            executions.add(execution);
 
-            try (final InputStream expectedStream = new FileInputStream(registration.expectationFile)) {
-                expected = IOUtils.readString(new InputStreamReader(expectedStream)).replace("\n", "").replace("\r", "");
+            // Warm-up executions are never enough to decide
+            if (i >= registration.warmUps && registration.expectationImpl.isDecided(submission.expected, outputs(executions))) {
+                break;
             }
+        }
+
+        return null;
+    }
 
-            final File step = new File(registration.testFile.getParentFile(), registration.step);
-            File env;
+    /**
+     * <p>
+     * Executes a submission once per expected result, all executions running in parallel. The results are examined
+     * in the order of the executions like {@link #runSequentially(String[], Submission, ExecutionResult[])} does, so
+     * the verdict doesn't depend on which execution completes first: pending executions are cancelled when the first
+     * execution not examined yet fails or when the expectation is decided with the executions examined so far. The
+     * failure of an execution following the decision is ignored.
+     * </p>
+     *
+     * @param args arguments for 'main' method of test executor
+     * @param submission the student's submission
+     * @param results the result of each execution, {@code null} if skipped
+     * @return the first failed execution, {@code null} if all executions succeeded
+     */
+    private ExecutionResult runInParallel(final String[] args, final Submission submission, final ExecutionResult[] results) {
+        final Registration registration = submission.registration;
+        final CompletionService<ExecutionResult> completion = new ExecutorCompletionService<>(repetitions);
+        final Map<Future<ExecutionResult>, Integer> futures = new HashMap<>();
+
+        for (int i = 0; i < results.length; i++) {
+            futures.put(completion.submit(() -> launch(args,
+                    submission.loaders,
+                    registration,
+                    submission.getMainClass(),
+                    submission.expected)), i);
+        }
 
-            for (final File file : registration.testFile.listFiles()) {
-                final Matcher matcher = FILE_TO_TEST_PATTERN.matcher(file.getName());
-                if (matcher.find()) {
-                    // The part of file name which represents the class name to test
-                    final String fileTest = matcher.group(7);
+        try {
+            final List<ExecutionResult> executions = new ArrayList<>(results.length);
+            final ExecutionResult[] received = new ExecutionResult[results.length];
+            int next = 0;
 
-                    // The student name
-                    final String student = matcher.group(2);
+            while (next < results.length) {
+                final Future<ExecutionResult> future = completion.take();
+                received[futures.get(future)] = future.get();
 
-                    // Create the directory containing compilation elements for current registration's test and current student
-                    env = new File(step, student);
-                    env.mkdirs();
+                // Examine the executions completed without a gap since the last one examined
+                for (; next < results.length && received[next] != null; next++) {
+                    final ExecutionResult execution = received[next];
 
-                    if (argActivated(args, "prepare")) {
-                        prepare(registration, fileTest, file, env, executor);
+                    if (!execution.isSuccess()) {
+                        return execution;
                     }
 
-                    // / Report any failure
-                    Map<Registration, String> line = results.get(student);
+                    results[next] = execution;
+                    executions.add(execution);
 
-                    if (line == null) {
-                        line = new HashMap<>();
-                        results.put(student, line);
+                    // Warm-up executions are never enough to decide
+                    if (next >= registration.warmUps && registration.expectationImpl.isDecided(submission.expected, outputs(executions))) {
+                        return null;
                     }
+                }
+            }
+
+            return null;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ee) {
+            // Not thrown by the execution itself
+        } finally {
+            for (final Future<ExecutionResult> future : futures.keySet()) {
+                future.cancel(true);
+            }
+        }
 
-                    final boolean success = argActivated(args, "compile") ? compile(env, line, registration, new File(env, executor)) : true;
+        return new ExecutionResult("Thread", null);
+    }
 
-                    // Execute compiled code
-                    if (success) {
-                        final String[] result = new String[registration.expectationImpl.getNumberOfExecutions()];
-                        boolean failure = false;
+    /**
+     * <p>
+     * Gets the output of each execution.
+     * </p>
+     *
+     * @param executions the executions
+     * @return the outputs
+     */
+    private static String[] outputs(final List<ExecutionResult> executions) {
+        final String[] retval = new String[executions.size()];
 
-                        for (int i = 0; i < result.length; i++)  {
-                            final Optional<String> opt = execute(args, env, registration, executor, line);
+        for (int i = 0; i < retval.length; i++) {
+            retval[i] = executions.get(i).getOutput();
+        }
 
-                            if (opt.isPresent()) {
-                                result[i] = opt.get();
-                            } else {
-                                failure = true;
-                                break;
-                            }
-                        }
+        return retval;
+    }
 
-                        // Report result
-                        if (!failure) {
-                            line.put(registration, String.valueOf(registration.expectationImpl.isResultExpected(expected, result)));
-                        }
-                    }
-                }
+    /**
+     * <p>
+     * Reports the profile of a profiled submission next to its verdict. A submission whose result is expected but
+     * whose profile is not accepted by the expectation compared to the reference solution is reported as "Slow". The
+     * reference solution must have been graded before.
+     * </p>
+     *
+     * @param submission the submission
+     */
+    private void profile(final Submission submission) {
+        if (submission.profile != null) {
+            final Registration registration = submission.registration;
+            String verdict = submission.line.get(registration);
+
+            if (Boolean.parseBoolean(verdict)
+                    && !registration.expectationImpl.isProfileExpected(submission.profile, registration.referenceProfile)) {
+                verdict = "Slow";
             }
-        }
 
-        // Print reported result
-        for (final Map.Entry<String, Map<Registration, String>> entry : results.entrySet()) {
-            System.out.println();
-            print(entry.getKey(), 20);
+            submission.line.put(registration, verdict + ' ' + submission.profile);
+        }
+    }
 
-            for (final Registration r : registrations) {
-                if (entry.getValue().containsKey(r)) {
-                    print(String.valueOf(entry.getValue().get(r)), 10);
-                } else {
-                    print("missing", 10);
+    /**
+     * <p>
+     * Waits for the completion of all the given tasks.
+     * </p>
+     *
+     * @param tasks the tasks
+     * @throws IOException if a task fails
+     */
+    public void await(final List<Future<?>> tasks) throws IOException {
+        for (final Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException(ie);
+            } catch (ExecutionException ee) {
+                if (ee.getCause() instanceof IOException) {
+                    throw (IOException) ee.getCause();
+                } else if (ee.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ee.getCause();
                 }
+
+                throw new IOException(ee.getCause());
             }
         }
     }
@@ -347,72 +2247,65 @@ public class JTester {
      */
     public void prepare(final Registration registration, final String fileTest, final File file, final File env, final String executor)
             throws IOException {
-        // Will append all the source code to compile here
-        final StringBuilder compile = new StringBuilder();
+        // Copy source code to compile into a file with test executor name
+        write(new File(env, executor), merge(registration, fileTest, file).getBytes());
+    }
 
+    /**
+     * <p>
+     * Merges the environment files, the test executor and the file to test into one source.
+     * </p>
+     *
+     * @param registration current registration
+     * @param fileTest the file to test
+     * @param file the file with same name as file to test in file to compile
+     * @return the source to compile
+     * @throws IOException if I/O error occurs
+     */
+    public String merge(final Registration registration, final String fileTest, final File file) throws IOException {
         // Build the list of files to compile: environment + executor file
         final File[] compileFile = new File[registration.environmentFiles.length + 1];
         System.arraycopy(registration.environmentFiles, 0, compileFile, 0, compileFile.length - 1);
         compileFile[compileFile.length - 1] = registration.testExecutorFile;
 
+        // Will append all the source code to compile here, imports are put in top of file
+        final StringBuilder imports = new StringBuilder();
+        final StringBuilder compile = new StringBuilder();
+
         // Load source code from file to compile and make some changes
         for (final File f : compileFile) {
-            String content;
 
             // Rename the class to test according to the name found in file to compile
             final boolean isFileToTest = fileTest.startsWith(f.getName().substring(0, f.getName().lastIndexOf('.')));
 
             // Read environment files except for the file to test which is substituted
             try (final InputStream src = new FileInputStream(isFileToTest ? file : f)) {
-                content = IOUtils.readString(new InputStreamReader(src));
-                int index;
-
-                if (registration.excludeSysout) {
-                    if (!f.getName().equals(registration.testExecutorFile.getName())) {
-                        while ((index = content.indexOf("System.out.println(")) != -1) {
-                            content = content.substring(0, index) + content.substring(content.indexOf(';', index) + 1);
-                        }
-                    }
-                }
-
-                // Remove any package declaration, we work in default package
-                while ((index = content.indexOf("package")) != -1) {
-                    content = content.substring(0, index) + content.substring(content.indexOf(';', index) + 1);
-                }
-
-                // No java.* import is necessary, put others in top of file
-                while ((index = content.indexOf("import")) != -1) {
-                    String importStatement = content.substring(index, content.indexOf(';', index) + 1);
-
-                    if (importStatement.contains("java.")) {
-                        compile.insert(0, importStatement);
-                    }
-
-                    content = content.substring(0, index) + content.substring(content.indexOf(';', index) + 1);
-                }
-
-                index = -fileTest.length();
-
-                // Rename class to test declaration/references with name in environment
-                while ((index = content.indexOf(fileTest, index + fileTest.length())) != -1) {
-                    // TODO : param replacement
-                    content = content.substring(0, index) + registration.expectationFile.getName() + content.substring(index + fileTest.length());
-                }
-
-                // We put all classes in one file so we keep only the test executor class public
-                if (!registration.testExecutorFile.getName().equals(f.getName())) {
-                    content = replace(replace(content, "public class ", "class "), "public interface ", "interface ");
-                }
-
-                compile.append(content);
+                registration.rewriter.rewrite(IOUtils.readString(new InputStreamReader(src)),
+                        registration.testExecutorFile.getName().equals(f.getName()),
+                        fileTest,
+                        registration.expectationFile.getName(),
+                        imports,
+                        compile);
             }
         }
 
-        // Copy source code to compile into a file with test executor name
-        final File path = new File(env, executor);
+        return imports.append(compile).toString();
+    }
+
+    /**
+     * <p>
+     * Writes the given content to a file.
+     * </p>
+     *
+     * @param path the file
+     * @param content the content
+     * @throws IOException if I/O error occurs
+     */
+    public void write(final File path, final byte[] content) throws IOException {
+        path.getParentFile().mkdirs();
 
         try (final OutputStream os = new FileOutputStream(path)) {
-            IOUtils.copyStreamIoe(new ByteArrayInputStream(compile.toString().getBytes()), os);
+            IOUtils.copyStreamIoe(new ByteArrayInputStream(content), os);
         }
     }
 
@@ -453,27 +2346,68 @@ public class JTester {
             throws IOException{
         // Compile source code into student's directory for current registration's test
         final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
-        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-        final StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null);
-        final Iterable<? extends JavaFileObject> compilationUnits = fileManager.getJavaFileObjectsFromStrings(Arrays.asList(path.getAbsolutePath()));
-        final JavaCompiler.CompilationTask task = compiler.getTask(null,
-                fileManager,
-                diagnostics,
-                Arrays.asList("-d", env.getAbsolutePath()),
-                null,
-                compilationUnits);
-        final boolean success = task.call();
+        final long start = System.nanoTime();
+        final boolean success = compilation.compile(path, env, diagnostics);
+        measure(registration, PipelineMetrics.Stage.COMPILE, start);
 
         // compilation fails
         if (!success) {
-            line.put(registration, String.format("L.%d", diagnostics.getDiagnostics().get(0).getLineNumber()));
+            line.put(registration, failure(diagnostics, null));
         }
 
-        fileManager.close();
-
         return success;
     }
 
+    /**
+     * <p>
+     * Perform compilation in memory.
+     * </p>
+     *
+     * @param source the source to compile
+     * @param line the report
+     * @param registration the current registration
+     * @param executor the test executor file name
+     * @return the bytecode associated to the binary name of each class, {@code null} if compilation fails
+     * @throws IOException if I/O error occurs
+     */
+    public Map<String, byte[]> compile(final String source,
+                                       final Map<Registration, String> line,
+                                       final Registration registration,
+                                       final String executor)
+            throws IOException {
+        final String key = compileCache == null ? null : compileCache.key(source, null);
+        final CompileCache.Entry entry = key == null ? null : compileCache.get(key);
+
+        // Unchanged source, reuse previous result
+        if (entry != null) {
+            if (entry.getFailure() != null) {
+                line.put(registration, entry.getFailure());
+            }
+
+            return entry.getClasses();
+        }
+
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        final long start = System.nanoTime();
+        final Map<String, byte[]> classes = compilation.compile(
+                Arrays.asList(new MemorySource(executor.substring(0, executor.lastIndexOf('.')), source)), null, diagnostics);
+        measure(registration, PipelineMetrics.Stage.COMPILE, start);
+
+        // compilation fails
+        if (classes == null) {
+            final String cell = failure(diagnostics, null);
+            line.put(registration, cell);
+
+            if (key != null) {
+                compileCache.putFailure(key, cell);
+            }
+        } else if (key != null) {
+            compileCache.putClasses(key, classes);
+        }
+
+        return classes;
+    }
+
     /**
      * <p>
      * Execute a test for the given settings.
@@ -490,54 +2424,354 @@ public class JTester {
                                     final File env,
                                     final Registration registration,
                                     final String executor,
-                                    final Map<Registration, String> line) {// Intercept output to check the result
-        final PrintStream std = System.out;
-        final Future<Optional<? extends Object>> call = pool.submit(() -> {
-            final ByteArrayOutputStream os = new ByteArrayOutputStream();
+                                    final Map<Registration, String> line) {
+        return execute(args, env, null, registration, executor.substring(0, executor.lastIndexOf('.')), null, line);
+    }
+
+    /**
+     * <p>
+     * Execute a test for the given settings.
+     * </p>
+     *
+     * @param args the main arguments
+     * @param env the test file
+     * @param classes the bytecode to load, {@code null} to load the classes from the test file
+     * @param registration the regsitration
+     * @param mainClass the binary name of the test executor class
+     * @param expected the expected result checked while output is captured, {@code null} to check it at the end only
+     * @param line the report map
+     * @return the captured result
+     */
+    public Optional<String> execute(final String[] args,
+                                    final File env,
+                                    final Map<String, byte[]> classes,
+                                    final Registration registration,
+                                    final String mainClass,
+                                    final String expected,
+                                    final Map<Registration, String> line) {
+        final ExecutionResult result;
+
+        try {
+            result = launch(args, loaders(env, classes, registration), registration, mainClass, expected);
+        } catch (IOException ioe) {
+            line.put(registration, "CNFE");
+            return Optional.empty();
+        }
+
+        if (result.isSuccess()) {
+            return Optional.of(result.getOutput());
+        }
+
+        line.put(registration, result.getStatus());
+        return Optional.empty();
+    }
+
+    /**
+     * <p>
+     * Creates the factory of the class loaders executing a test. Classes are instrumented if the registration has an
+     * operation budget.
+     * </p>
+     *
+     * @param env the test file
+     * @param classes the bytecode to load, {@code null} to read the classes from the test file
+     * @param registration the regsitration
+     * @return the factory
+     * @throws IOException if the classes can't be read
+     */
+    private ClassLoaderFactory loaders(final File env, final Map<String, byte[]> classes, final Registration registration)
+            throws IOException {
+        return new ClassLoaderFactory(JTester.class.getClassLoader(),
+                classes != null ? classes : readClasses(env),
+                registration.operationBudget > 0 ? OPERATION_COUNTER : null);
+    }
+
+    /**
+     * <p>
+     * Execute a test in this JVM or in a worker JVM if isolation is enabled. With virtual threads, the execution waits
+     * until the number of concurrent executions is below the limit.
+     * </p>
+     *
+     * @param args the main arguments
+     * @param loaders the factory of the class loaders
+     * @param registration the regsitration
+     * @param mainClass the binary name of the test executor class
+     * @param expected the expected result checked while output is captured, {@code null} to check it at the end only
+     * @return the result
+     */
+    private ExecutionResult launch(final String[] args,
+                                   final ClassLoaderFactory loaders,
+                                   final Registration registration,
+                                   final String mainClass,
+                                   final String expected) {
+        if (executions != null) {
+            try {
+                executions.acquire();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return new ExecutionResult("Thread", null);
+            }
+        }
+
+        try {
+            final long start = System.nanoTime();
+            final ExecutionResult retval = sandbox != null ?
+                    isolate(args, loaders, registration, mainClass) :
+                    executeInProcess(args, loaders, registration, mainClass, expected);
+            measure(registration, PipelineMetrics.Stage.EXECUTE, start);
+            return retval;
+        } finally {
+            if (executions != null) {
+                executions.release();
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Records the latency of a stage if metrics are recorded.
+     * </p>
+     *
+     * @param registration the registration
+     * @param stage the stage
+     * @param start the start of the stage given by {@link System#nanoTime()}
+     */
+    private void measure(final Registration registration, final PipelineMetrics.Stage stage, final long start) {
+        if (metrics != null) {
+            metrics.record(registration.step, stage, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * <p>
+     * Execute a test in this JVM. The 'main' method runs in a dedicated thread group, so the execution and the threads
+     * it starts are stopped when a budget is exceeded and never hold a thread needed by the next executions. The group
+     * is a daemon so it is destroyed with its last thread, which only matters before Java 19 where thread groups are
+     * kept until destroyed: the daemon status does nothing since.
+     * </p>
+     *
+     * @param args the main arguments
+     * @param loaders the factory of the class loaders
+     * @param registration the regsitration
+     * @param mainClass the binary name of the test executor class
+     * @param expected the expected result checked while output is captured, {@code null} to check it at the end only
+     * @return the result
+     */
+    @SuppressWarnings({"deprecation", "removal"})
+    private ExecutionResult executeInProcess(final String[] args,
+                                             final ClassLoaderFactory loaders,
+                                             final Registration registration,
+                                             final String mainClass,
+                                             final String expected) {
+        // Output of a single execution can be checked while captured
+        final CaptureStream os = expected != null && registration.expectationImpl.getNumberOfExecutions() == 1 ?
+                new CaptureStream(outputLimit, registration.expectationImpl, expected) :
+                new CaptureStream(outputLimit, null, null);
+        final OperationBudget budget = registration.operationBudget > 0 ? new OperationBudget(registration.operationBudget) : null;
+        final FutureTask<ExecutionResult> call = new FutureTask<>(() -> {
+            ResourceMeter meter = null;
 
             try {
-                System.setOut(new PrintStream(os));
+                // Intercept output of this execution to check the result
+                capture.begin(os);
 
-                // Create a new class loader with the directory
-                final ClassLoader loader = new URLClassLoader(new URL[]{env.toURL()});
+                if (budget != null) {
+                    budget.begin();
+                }
 
-                // Load in the classes
-                final Class clazz = loader.loadClass(executor.substring(0, executor.lastIndexOf('.')));
+                // Load in the classes with a new class loader
+                final Class clazz = loaders.newClassLoader().loadClass(mainClass);
                 final Class[] argTypes = {args.getClass(),};
                 final Object[] passedArgs = {args};
 
                 // Execute 'main' method
                final Method main = clazz.getMethod("main", argTypes);
+                meter = new ResourceMeter();
                 main.invoke(null, passedArgs);
-                return Optional.of(new String(os.toByteArray()).replace("\n", "").replace("\r", ""));
-            } catch (MalformedURLException e) {
-                line.put(registration, "MUE");
             } catch (ClassNotFoundException e) {
-                line.put(registration, "CNFE");
+                return new ExecutionResult("CNFE", null);
             } catch (Exception ex) {
-                line.put(registration, "Invoke");
+                if (budget != null && budget.isExceeded()) {
+                    return new ExecutionResult("Budget", null);
+                }
+
+                // Rejected output is reported by the expectation
+                if (!os.isOverflow() && !os.isRejected()) {
+                    return new ExecutionResult("Invoke", null);
+                }
+            } catch (Error e) {
+                // Budget exceeded during a class initialization
+                if (budget != null && budget.isExceeded()) {
+                    return new ExecutionResult("Budget", null);
+                }
+
+                throw e;
+            } finally {
+                OperationBudget.end();
+                capture.end();
             }
 
-            return Optional.empty();
+            if (os.isOverflow()) {
+                return new ExecutionResult("Overflow", null);
+            }
+
+            return meter.result(ExecutionResult.OK, os);
         });
 
+        // Threads started by the code under test inherit the group and the daemon status
+        final ThreadGroup group = new ThreadGroup("jtester-" + mainClass);
+        // No-op since Java 19
+        group.setDaemon(true);
+        final Thread thread = new Thread(group, call, "jtester-" + mainClass);
+        thread.setDaemon(true);
+        thread.start();
+
+        try {
+            return waitFor(call, group, registration);
+        } finally {
+            // Also stop the threads left running by a 'main' method which returned
+            stop(group);
+        }
+    }
+
+    /**
+     * <p>
+     * Waits for an execution in this JVM within the budgets of the registration.
+     * </p>
+     *
+     * @param call the execution
+     * @param group the threads of the execution
+     * @param registration the registration
+     * @return the result, "Timeout" or "CPU" status if a budget has been exceeded
+     */
+    private ExecutionResult waitFor(final FutureTask<ExecutionResult> call,
+                                    final ThreadGroup group,
+                                    final Registration registration) {
+        final long deadline = System.nanoTime() + registration.wallBudget;
+        final Map<Long, Long> cpu = new HashMap<>();
+
         try {
-            return (Optional<String>) call.get(5, TimeUnit.SECONDS);
+            while (true) {
+                final long remaining = deadline - System.nanoTime();
+
+                if (remaining <= 0) {
+                    return new ExecutionResult("Timeout", null);
+                } else if (registration.cpuBudget > 0 && cpuTime(group, cpu) > registration.cpuBudget) {
+                    return new ExecutionResult("CPU", null);
+                }
+
+                try {
+                    return call.get(registration.cpuBudget > 0 ? Math.min(remaining, CPU_POLL) : remaining, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException te) {
+                    // Check the budgets again
+                }
+            }
         } catch (InterruptedException ie) {
-            line.put(registration, "Thread");
+            Thread.currentThread().interrupt();
         } catch (ExecutionException ee) {
-            line.put(registration, "Thread");
-        }  catch (TimeoutException te) {
-            line.put(registration, "Timeout");
-        }  finally {
-            System.setOut(std);
+            // Not thrown by the execution itself
+        }
+
+        return new ExecutionResult("Thread", null);
+    }
+
+    /**
+     * <p>
+     * Measures the CPU time consumed by the threads of an execution. The last measure of each thread is kept, so the
+     * time of the threads which already died is still counted.
+     * </p>
+     *
+     * @param group the threads of the execution
+     * @param cpu the last CPU time measured for each thread identifier
+     * @return the total CPU time in nanoseconds
+     */
+    private static long cpuTime(final ThreadGroup group, final Map<Long, Long> cpu) {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        final Thread[] threads = new Thread[group.activeCount() + 1];
+        final int count = group.enumerate(threads);
+
+        for (int i = 0; i < count; i++) {
+            final long time = bean.getThreadCpuTime(threads[i].getId());
+
+            // Not supported, disabled or thread died meanwhile
+            if (time > 0) {
+                cpu.put(threads[i].getId(), time);
+            }
         }
 
-        if (call.isCancelled()) {
-            call.cancel(true);
+        long retval = 0;
+
+        for (final long time : cpu.values()) {
+            retval += time;
         }
 
-        return Optional.empty();
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Stops all the threads of an execution. Threads are interrupted, then stopped with {@link Thread#stop()} which
+     * makes {@link ThreadDeath} thrown by the running code. When the JVM does not support stopping threads anymore,
+     * threads ignoring the interruption are abandoned as daemons, see {@link #setIsolation(int, String...)} to execute
+     * the code in worker JVMs which can be killed.
+     * </p>
+     *
+     * @param group the threads of the execution
+     */
+    @SuppressWarnings({"deprecation", "removal"})
+    private static void stop(final ThreadGroup group) {
+        group.interrupt();
+        final Thread[] threads = new Thread[group.activeCount() + 1];
+        final int count = group.enumerate(threads);
+
+        for (int i = 0; i < count; i++) {
+            try {
+                threads[i].stop();
+            } catch (UnsupportedOperationException uoe) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Execute a test in a worker JVM.
+     * </p>
+     *
+     * @param args the main arguments
+     * @param loaders the factory of the class loaders providing the bytecode
+     * @param registration the regsitration
+     * @param mainClass the binary name of the test executor class
+     * @return the result
+     */
+    private ExecutionResult isolate(final String[] args,
+                                    final ClassLoaderFactory loaders,
+                                    final Registration registration,
+                                    final String mainClass) {
+        try {
+            return sandbox.run(mainClass,
+                    args,
+                    loaders.getClasses(),
+                    outputLimit,
+                    registration.wallBudget,
+                    registration.cpuBudget,
+                    TimeUnit.NANOSECONDS,
+                    registration.operationBudget);
+        } catch (IOException ioe) {
+            return new ExecutionResult("Thread", null);
+        }
+    }
+
+    /**
+     * <p>
+     * Reads all the classes compiled into a directory.
+     * </p>
+     *
+     * @param env the directory
+     * @return the bytecode associated to the binary name of each class
+     * @throws IOException if I/O error occurs
+     */
+    public Map<String, byte[]> readClasses(final File env) throws IOException {
+        return ClassLoaderFactory.read(env);
     }
 
     /**
@@ -546,11 +2780,15 @@ public class JTester {
      * </p>
      *
      * @param s the message
-     * @param len the length of the message (remaining chars will be let blank)
+     * @param len the minimum length of the message (remaining chars will be let blank)
      */
     public void print(final String s, final int len) {
-        final char[] chars = new char[len];
-        System.arraycopy(s.toCharArray(), 0, chars, 0, s.length());
-        System.out.print(new String(chars) + '\t');
+        final StringBuilder sb = new StringBuilder(Math.max(s.length(), len) + 1).append(s);
+
+        while (sb.length() < len) {
+            sb.append(' ');
+        }
+
+        System.out.print(sb.append('\t'));
     }
 }
\ No newline at end of file
@@ -0,0 +1,49 @@
+package com.github.gdrouet.jtester;
+
+import javax.tools.SimpleJavaFileObject;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+
+/**
+ * A class file written by the compiler into memory.
+ */
+public class MemoryClass extends SimpleJavaFileObject {
+
+    /**
+     * The bytecode.
+     */
+    private final ByteArrayOutputStream bytes;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param className the binary name of the class
+     */
+    public MemoryClass(final String className) {
+        super(URI.create("bytes:///" + className.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+        bytes = new ByteArrayOutputStream();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public OutputStream openOutputStream() {
+        bytes.reset();
+        return bytes;
+    }
+
+    /**
+     * <p>
+     * Gets the bytecode written by the compiler.
+     * </p>
+     *
+     * @return the bytecode
+     */
+    public byte[] getBytes() {
+        return bytes.toByteArray();
+    }
+}
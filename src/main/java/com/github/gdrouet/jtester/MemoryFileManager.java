@@ -0,0 +1,78 @@
+package com.github.gdrouet.jtester;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A file manager which keeps the class files generated by the compiler in memory.
+ */
+public class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+    /**
+     * The generated classes associated to their binary name.
+     */
+    private final Map<String, MemoryClass> classes;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param fileManager the file manager resolving the platform classes
+     */
+    public MemoryFileManager(final StandardJavaFileManager fileManager) {
+        super(fileManager);
+        classes = new LinkedHashMap<>();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public JavaFileObject getJavaFileForOutput(final JavaFileManager.Location location,
+                                               final String className,
+                                               final JavaFileObject.Kind kind,
+                                               final FileObject sibling) throws IOException {
+        if (location == StandardLocation.CLASS_OUTPUT && kind == JavaFileObject.Kind.CLASS) {
+            final MemoryClass retval = new MemoryClass(className);
+            classes.put(className, retval);
+            return retval;
+        }
+
+        return super.getJavaFileForOutput(location, className, kind, sibling);
+    }
+
+    /**
+     * <p>
+     * Gets the bytecode of all generated classes.
+     * </p>
+     *
+     * @return the bytecode associated to the binary name of each class
+     */
+    public Map<String, byte[]> getClasses() {
+        final Map<String, byte[]> retval = new LinkedHashMap<>();
+
+        for (final Map.Entry<String, MemoryClass> entry : classes.entrySet()) {
+            retval.put(entry.getKey(), entry.getValue().getBytes());
+        }
+
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Does not close the underlying file manager which could be shared.
+     * </p>
+     */
+    @Override
+    public void close() {
+        classes.clear();
+    }
+}
@@ -0,0 +1,36 @@
+package com.github.gdrouet.jtester;
+
+import javax.tools.SimpleJavaFileObject;
+import java.net.URI;
+
+/**
+ * A compilation unit whose source code is held in memory.
+ */
+public class MemorySource extends SimpleJavaFileObject {
+
+    /**
+     * The source code.
+     */
+    private final String code;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param className the binary name of the public class declared in the source
+     * @param source the source code
+     */
+    public MemorySource(final String className, final String source) {
+        super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+        code = source;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+        return code;
+    }
+}
@@ -0,0 +1,111 @@
+package com.github.gdrouet.jtester;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Counts the operations of an execution, an operation being a method entry or a loop back-edge of the code
+ * instrumented by {@link OperationCounter}. When the count exceeds the budget, each operation throws an
+ * {@link Exceeded} error to stop the execution. Unlike a timeout, the point where an execution is stopped does not
+ * depend on the load of the machine.
+ * </p>
+ * <p>
+ * The budget is bound to the thread running the execution and inherited by the threads it starts.
+ * </p>
+ */
+public final class OperationBudget {
+
+    /**
+     * <p>
+     * Error thrown into the executed code to stop it. This is an error so the code under test does not catch it with
+     * the usual exception handlers.
+     * </p>
+     */
+    public static final class Exceeded extends Error {
+
+        /**
+         * Serial version UID.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         */
+        private Exceeded() {
+            super("Operation budget exceeded", null, false, false);
+        }
+    }
+
+    /**
+     * The budget of the current execution.
+     */
+    private static final ThreadLocal<OperationBudget> CURRENT = new InheritableThreadLocal<>();
+
+    /**
+     * Number of remaining operations.
+     */
+    private final AtomicLong remaining;
+
+    /**
+     * The budget has been exceeded.
+     */
+    private volatile boolean exceeded;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param operations the maximum number of operations
+     */
+    public OperationBudget(final long operations) {
+        remaining = new AtomicLong(operations);
+    }
+
+    /**
+     * <p>
+     * Binds this budget to the current thread.
+     * </p>
+     */
+    public void begin() {
+        CURRENT.set(this);
+    }
+
+    /**
+     * <p>
+     * Unbinds the budget of the current thread.
+     * </p>
+     */
+    public static void end() {
+        CURRENT.remove();
+    }
+
+    /**
+     * <p>
+     * Indicates if the budget has been exceeded.
+     * </p>
+     *
+     * @return {@code true} if the execution has been stopped because of the budget, {@code false} otherwise
+     */
+    public boolean isExceeded() {
+        return exceeded;
+    }
+
+    /**
+     * <p>
+     * Counts an operation. This method is called by the instrumented code.
+     * </p>
+     *
+     * @throws Exceeded if the budget of the current thread is exceeded
+     */
+    public static void tick() {
+        final OperationBudget budget = CURRENT.get();
+
+        if (budget != null && budget.remaining.decrementAndGet() < 0) {
+            budget.exceeded = true;
+            throw new Exceeded();
+        }
+    }
+}
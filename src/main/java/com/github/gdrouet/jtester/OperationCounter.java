@@ -0,0 +1,155 @@
+package com.github.gdrouet.jtester;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * <p>
+ * Instruments the code under test with a call to {@link OperationBudget#tick()} at each method entry and before each
+ * backward jump. Every loop iteration and every call, recursive calls included, is counted so an infinite loop
+ * exceeds the budget after the same number of operations on any machine.
+ * </p>
+ * <p>
+ * No branch is added, so the stack map frames of the original class remain valid.
+ * </p>
+ */
+public class OperationCounter implements BytecodeTransformer {
+
+    /**
+     * Internal name of the class counting the operations.
+     */
+    private static final String OWNER = Type.getInternalName(OperationBudget.class);
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] transform(final String name, final byte[] bytecode) {
+        final ClassReader reader = new ClassReader(bytecode);
+        final ClassWriter writer = new ClassWriter(reader, 0);
+
+        reader.accept(new ClassVisitor(Opcodes.ASM9, writer) {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public MethodVisitor visitMethod(final int access,
+                                             final String n,
+                                             final String descriptor,
+                                             final String signature,
+                                             final String[] exceptions) {
+                return new Ticker(super.visitMethod(access, n, descriptor, signature, exceptions));
+            }
+        }, 0);
+
+        return writer.toByteArray();
+    }
+
+    /**
+     * <p>
+     * Inserts the calls into a method.
+     * </p>
+     */
+    private static final class Ticker extends MethodVisitor {
+
+        /**
+         * The labels already visited, a jump to one of them is a backward jump.
+         */
+        private final Set<Label> visited;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param mv the visitor writing the method
+         */
+        private Ticker(final MethodVisitor mv) {
+            super(Opcodes.ASM9, mv);
+            visited = new HashSet<>();
+        }
+
+        /**
+         * <p>
+         * Inserts a call counting an operation.
+         * </p>
+         */
+        private void tick() {
+            super.visitMethodInsn(Opcodes.INVOKESTATIC, OWNER, "tick", "()V", false);
+        }
+
+        /**
+         * <p>
+         * Inserts a call if the default target or one of the given targets has already been visited.
+         * </p>
+         *
+         * @param dflt the default target
+         * @param targets the other targets
+         */
+        private void tickIfBackward(final Label dflt, final Label... targets) {
+            boolean backward = visited.contains(dflt);
+
+            for (int i = 0; !backward && i < targets.length; i++) {
+                backward = visited.contains(targets[i]);
+            }
+
+            if (backward) {
+                tick();
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void visitCode() {
+            super.visitCode();
+            tick();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void visitLabel(final Label label) {
+            visited.add(label);
+            super.visitLabel(label);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void visitJumpInsn(final int opcode, final Label label) {
+            tickIfBackward(label);
+            super.visitJumpInsn(opcode, label);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void visitTableSwitchInsn(final int min, final int max, final Label dflt, final Label... labels) {
+            tickIfBackward(dflt, labels);
+            super.visitTableSwitchInsn(min, max, dflt, labels);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void visitLookupSwitchInsn(final Label dflt, final int[] keys, final Label[] labels) {
+            tickIfBackward(dflt, labels);
+            super.visitLookupSwitchInsn(dflt, keys, labels);
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package com.github.gdrouet.jtester;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * <p>
+ * A {@link PrintStream} installed once as {@link System#out} which sends what is printed by a thread to the stream
+ * captured for this thread. Threads started by a captured execution inherit its stream, so several executions can
+ * print at the same time without mixing their output. Threads without capture print to the original stream.
+ * </p>
+ */
+public final class OutputCapture extends PrintStream {
+
+    /**
+     * The installed instance.
+     */
+    private static OutputCapture instance;
+
+    /**
+     * The stream used by the current thread.
+     */
+    private final InheritableThreadLocal<PrintStream> current;
+
+    /**
+     * The original standard output.
+     */
+    private final PrintStream std;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param out the original standard output
+     */
+    private OutputCapture(final PrintStream out) {
+        super(out);
+        std = out;
+        current = new InheritableThreadLocal<>();
+    }
+
+    /**
+     * <p>
+     * Installs the capture as {@link System#out} if not already done.
+     * </p>
+     *
+     * @return the installed capture
+     */
+    public static synchronized OutputCapture install() {
+        if (instance == null) {
+            instance = new OutputCapture(System.out);
+            System.setOut(instance);
+        }
+
+        return instance;
+    }
+
+    /**
+     * <p>
+     * Sends everything printed by the current thread and the threads it starts to the given stream.
+     * </p>
+     *
+     * @param os the stream receiving the output
+     */
+    public void begin(final OutputStream os) {
+        current.set(new PrintStream(os));
+    }
+
+    /**
+     * <p>
+     * Stops capturing the output of the current thread.
+     * </p>
+     */
+    public void end() {
+        final PrintStream ps = current.get();
+        current.remove();
+
+        if (ps != null) {
+            ps.flush();
+        }
+    }
+
+    /**
+     * <p>
+     * Gets the stream receiving the output of the current thread.
+     * </p>
+     *
+     * @return the captured stream, the original standard output if the thread is not captured
+     */
+    private PrintStream target() {
+        final PrintStream ps = current.get();
+        return ps == null ? std : ps;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flush() {
+        target().flush();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+        target().flush();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean checkError() {
+        return target().checkError();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(final int b) {
+        target().write(b);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(final byte[] buf, final int off, final int len) {
+        target().write(buf, off, len);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void print(final boolean b) {
+        target().print(b);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void print(final char c) {
+        target().print(c);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void print(final int i) {
+        target().print(i);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void print(final long l) {
+        target().print(l);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void print(final float f) {
+        target().print(f);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void print(final double d) {
+        target().print(d);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void print(final char[] s) {
+        target().print(s);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void print(final String s) {
+        target().print(s);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void print(final Object obj) {
+        target().print(obj);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void println() {
+        target().println();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void println(final boolean x) {
+        target().println(x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void println(final char x) {
+        target().println(x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void println(final int x) {
+        target().println(x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void println(final long x) {
+        target().println(x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void println(final float x) {
+        target().println(x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void println(final double x) {
+        target().println(x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void println(final char[] x) {
+        target().println(x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void println(final String x) {
+        target().println(x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void println(final Object x) {
+        target().println(x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PrintStream printf(final String format, final Object... args) {
+        target().printf(format, args);
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PrintStream printf(final Locale l, final String format, final Object... args) {
+        target().printf(l, format, args);
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PrintStream format(final String format, final Object... args) {
+        target().format(format, args);
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PrintStream format(final Locale l, final String format, final Object... args) {
+        target().format(l, format, args);
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PrintStream append(final CharSequence csq) {
+        target().append(csq);
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PrintStream append(final CharSequence csq, final int start, final int end) {
+        target().append(csq, start, end);
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PrintStream append(final char c) {
+        target().append(c);
+        return this;
+    }
+}
@@ -0,0 +1,517 @@
+package com.github.gdrouet.jtester;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * <p>
+ * Metrics of the grading pipeline. For each registration, the latency of each {@link Stage} is recorded in a
+ * histogram and each reported result is counted by outcome: "true", "false", "L.x" for any compilation error and the
+ * failure cells like "Timeout", "CNFE" or "Invoke". The progress of the run is tracked with the number of submitted and
+ * graded cells.
+ * </p>
+ * <p>
+ * The metrics are exposed through JMX once {@link #register()} is called, and can be written periodically to a
+ * snapshot file, in JSON when its name ends with ".json", in text otherwise. A progress line with the throughput and
+ * the estimated remaining time can be printed at the same period, typically to the standard error so the report
+ * printed on the standard output is not mixed with it.
+ * </p>
+ */
+public class PipelineMetrics implements PipelineMetricsMBean {
+
+    /**
+     * <p>
+     * A stage of the pipeline.
+     * </p>
+     */
+    public enum Stage {
+
+        /**
+         * Merge of the environment, the test executor and the file to test.
+         */
+        PREPARE,
+
+        /**
+         * One compilation task, which compiles all the students of a registration in batch mode.
+         */
+        COMPILE,
+
+        /**
+         * Reading and instrumentation of the bytecode before the executions.
+         */
+        LOAD,
+
+        /**
+         * One execution of the test executor.
+         */
+        EXECUTE,
+
+        /**
+         * Check of the outputs by the expectation.
+         */
+        MATCH
+    }
+
+    /**
+     * <p>
+     * A histogram of latencies with one bucket per power of two nanoseconds. Percentiles are estimated with the upper
+     * bound of their bucket, so they are at most twice the real value.
+     * </p>
+     */
+    private static final class Histogram {
+
+        /**
+         * Number of latencies in each bucket.
+         */
+        private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE);
+
+        /**
+         * Number of latencies.
+         */
+        private final LongAdder count = new LongAdder();
+
+        /**
+         * Sum of the latencies in nanoseconds.
+         */
+        private final LongAdder sum = new LongAdder();
+
+        /**
+         * Maximum latency in nanoseconds.
+         */
+        private final AtomicLong max = new AtomicLong();
+
+        /**
+         * <p>
+         * Records a latency.
+         * </p>
+         *
+         * @param nanos the latency in nanoseconds
+         */
+        private void record(final long nanos) {
+            final long value = Math.max(nanos, 0);
+            buckets.incrementAndGet(Long.SIZE - 1 - Long.numberOfLeadingZeros(value | 1));
+            count.increment();
+            sum.add(value);
+            max.accumulateAndGet(value, Math::max);
+        }
+
+        /**
+         * <p>
+         * Estimates a percentile.
+         * </p>
+         *
+         * @param p the percentile between 0 and 1
+         * @return the latency in nanoseconds, 0 if no latency has been recorded
+         */
+        private long percentile(final double p) {
+            final long total = count.sum();
+            final long rank = (long) Math.ceil(total * p);
+            long seen = 0;
+
+            for (int i = 0; i < Long.SIZE; i++) {
+                seen += buckets.get(i);
+
+                if (seen >= rank && seen > 0) {
+                    return Math.min((1L << (i + 1)) - 1, max.get());
+                }
+            }
+
+            return 0;
+        }
+    }
+
+    /**
+     * Any compilation error, whatever its line.
+     */
+    private static final Pattern COMPILATION_ERROR = Pattern.compile("L\\.\\d+");
+
+    /**
+     * The histograms of each stage for each registration step.
+     */
+    private final Map<String, Map<Stage, Histogram>> latencies;
+
+    /**
+     * The number of results of each outcome for each registration step.
+     */
+    private final Map<String, Map<String, LongAdder>> outcomes;
+
+    /**
+     * Cells submitted for grading.
+     */
+    private final LongAdder total;
+
+    /**
+     * Cells graded.
+     */
+    private final LongAdder completed;
+
+    /**
+     * Creation time in nanoseconds.
+     */
+    private final long start;
+
+    /**
+     * Name of the MBean, {@code null} if not registered.
+     */
+    private ObjectName name;
+
+    /**
+     * Writes the snapshots and the progress line, {@code null} if not started.
+     */
+    private ScheduledExecutorService reporter;
+
+    /**
+     * Length of the last progress line printed, cleared by the next one.
+     */
+    private int progressWidth;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     */
+    public PipelineMetrics() {
+        latencies = new ConcurrentHashMap<>();
+        outcomes = new ConcurrentHashMap<>();
+        total = new LongAdder();
+        completed = new LongAdder();
+        start = System.nanoTime();
+    }
+
+    /**
+     * <p>
+     * Records the latency of a stage.
+     * </p>
+     *
+     * @param step the registration step
+     * @param stage the stage
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(final String step, final Stage stage, final long nanos) {
+        latencies.computeIfAbsent(step, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(stage, k -> new Histogram())
+                .record(nanos);
+    }
+
+    /**
+     * <p>
+     * Adds cells to grade.
+     * </p>
+     *
+     * @param cells the number of cells
+     */
+    public void submitted(final int cells) {
+        total.add(cells);
+    }
+
+    /**
+     * <p>
+     * Counts a graded cell by outcome. A profile appended to the result is ignored.
+     * </p>
+     *
+     * @param step the registration step
+     * @param cell the result reported in the student's report
+     */
+    public void completed(final String step, final String cell) {
+        final int space = cell.indexOf(' ');
+        String outcome = space == -1 ? cell : cell.substring(0, space);
+
+        if (COMPILATION_ERROR.matcher(outcome).matches()) {
+            outcome = "L.x";
+        }
+
+        outcomes.computeIfAbsent(step, k -> new ConcurrentHashMap<>()).computeIfAbsent(outcome, k -> new LongAdder()).increment();
+        completed.increment();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getTotalCells() {
+        return total.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCompletedCells() {
+        return completed.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getThroughput() {
+        final long elapsed = System.nanoTime() - start;
+        return elapsed > 0 ? completed.sum() * 1e9 / elapsed : 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getEtaSeconds() {
+        final double throughput = getThroughput();
+        return throughput > 0 ? (long) Math.ceil(Math.max(total.sum() - completed.sum(), 0) / throughput) : -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getSnapshot() {
+        final StringBuilder retval = new StringBuilder();
+        retval.append("{\"elapsedMillis\":").append(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        retval.append(",\"totalCells\":").append(getTotalCells());
+        retval.append(",\"completedCells\":").append(getCompletedCells());
+        retval.append(",\"throughput\":").append(String.format(Locale.ROOT, "%.3f", getThroughput()));
+        retval.append(",\"etaSeconds\":").append(getEtaSeconds());
+        retval.append(",\"registrations\":{");
+        boolean first = true;
+
+        for (final String step : steps()) {
+            retval.append(first ? "" : ",").append('"').append(escape(step)).append("\":{\"stages\":{");
+            first = false;
+            boolean firstStage = true;
+
+            for (final Map.Entry<Stage, Histogram> s : new TreeMap<>(latencies.getOrDefault(step, Collections.emptyMap())).entrySet()) {
+                final Histogram h = s.getValue();
+                final long count = h.count.sum();
+                retval.append(firstStage ? "" : ",").append('"').append(s.getKey().name().toLowerCase(Locale.ROOT)).append("\":{");
+                retval.append("\"count\":").append(count);
+                retval.append(",\"meanMicros\":").append(count > 0 ? h.sum.sum() / count / 1000 : 0);
+                retval.append(",\"p50Micros\":").append(h.percentile(0.5) / 1000);
+                retval.append(",\"p90Micros\":").append(h.percentile(0.9) / 1000);
+                retval.append(",\"p99Micros\":").append(h.percentile(0.99) / 1000);
+                retval.append(",\"maxMicros\":").append(h.max.get() / 1000).append('}');
+                firstStage = false;
+            }
+
+            retval.append("},\"outcomes\":{");
+            boolean firstOutcome = true;
+
+            for (final Map.Entry<String, LongAdder> o : new TreeMap<>(outcomes.getOrDefault(step, Collections.emptyMap())).entrySet()) {
+                retval.append(firstOutcome ? "" : ",").append('"').append(escape(o.getKey())).append("\":").append(o.getValue().sum());
+                firstOutcome = false;
+            }
+
+            retval.append("}}");
+        }
+
+        return retval.append("}}").toString();
+    }
+
+    /**
+     * <p>
+     * Gets a snapshot of all the metrics in text, one line per stage and one line of outcomes per registration.
+     * </p>
+     *
+     * @return the snapshot
+     */
+    public String getTextSnapshot() {
+        final StringBuilder retval = new StringBuilder();
+        retval.append(progress()).append(System.lineSeparator());
+
+        for (final String step : steps()) {
+            for (final Map.Entry<Stage, Histogram> s : new TreeMap<>(latencies.getOrDefault(step, Collections.emptyMap())).entrySet()) {
+                final Histogram h = s.getValue();
+                final long count = h.count.sum();
+                retval.append(String.format(Locale.ROOT, "%-10s %-8s %8d calls, mean %10.3f ms, p50 %10.3f ms, p90 %10.3f ms, p99 %10.3f ms, max %10.3f ms%n",
+                        step,
+                        s.getKey().name().toLowerCase(Locale.ROOT),
+                        count,
+                        count > 0 ? h.sum.sum() / count / 1e6 : 0,
+                        h.percentile(0.5) / 1e6,
+                        h.percentile(0.9) / 1e6,
+                        h.percentile(0.99) / 1e6,
+                        h.max.get() / 1e6));
+            }
+
+            retval.append(String.format("%-10s outcomes %s%n", step, new TreeMap<>(outcomes.getOrDefault(step, Collections.emptyMap()))));
+        }
+
+        return retval.toString();
+    }
+
+    /**
+     * <p>
+     * Gets the progress of the run.
+     * </p>
+     *
+     * @return the progress line
+     */
+    public String progress() {
+        final long eta = getEtaSeconds();
+        return String.format(Locale.ROOT, "%d/%d cells, %.1f cells/s, ETA %s",
+                getCompletedCells(),
+                getTotalCells(),
+                getThroughput(),
+                eta < 0 ? "unknown" : String.format("%d:%02d:%02d", eta / 3600, eta / 60 % 60, eta % 60));
+    }
+
+    /**
+     * <p>
+     * Registers the metrics in the platform MBean server.
+     * </p>
+     *
+     * @throws JMException if the MBean can't be registered
+     */
+    public synchronized void register() throws JMException {
+        if (name == null) {
+            final ObjectName n = new ObjectName("com.github.gdrouet.jtester:type=PipelineMetrics,id=" + System.identityHashCode(this));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, n);
+            name = n;
+        }
+    }
+
+    /**
+     * <p>
+     * Writes a snapshot and prints the progress line periodically until {@link #close(File, PrintStream)} is called.
+     * </p>
+     *
+     * @param snapshot the snapshot file, replaced at each period, {@code null} if none
+     * @param progress the stream where the progress line is printed, {@code null} if none
+     * @param period the period
+     * @param unit the period unit
+     */
+    public synchronized void start(final File snapshot, final PrintStream progress, final long period, final TimeUnit unit) {
+        if (reporter != null) {
+            throw new IllegalStateException("Already started");
+        }
+
+        reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread retval = new Thread(r, "metrics-reporter");
+            retval.setDaemon(true);
+            return retval;
+        });
+        reporter.scheduleAtFixedRate(() -> report(snapshot, progress, false), period, period, unit);
+    }
+
+    /**
+     * <p>
+     * Writes a snapshot and prints the progress line.
+     * </p>
+     *
+     * @param snapshot the snapshot file, {@code null} if none
+     * @param progress the stream where the progress line is printed, {@code null} if none
+     * @param last {@code true} to end the progress line, {@code false} to overwrite it next time
+     */
+    private synchronized void report(final File snapshot, final PrintStream progress, final boolean last) {
+        // A periodic report waiting for the last one is dropped
+        if (!last && reporter == null) {
+            return;
+        }
+
+        if (progress != null) {
+            final StringBuilder line = new StringBuilder("\r").append(progress());
+            final int width = line.length();
+
+            // Overwrite the end of a longer previous line
+            while (line.length() < progressWidth) {
+                line.append(' ');
+            }
+
+            progressWidth = last ? 0 : width;
+            progress.print(line.append(last ? System.lineSeparator() : ""));
+            progress.flush();
+        }
+
+        if (snapshot != null) {
+            final String content = snapshot.getName().endsWith(".json") ? getSnapshot() : getTextSnapshot();
+            final File tmp = new File(snapshot.getPath() + ".tmp");
+
+            try {
+                Files.write(tmp.toPath(), content.getBytes(StandardCharsets.UTF_8));
+                Files.move(tmp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException ioe) {
+                // The next snapshot is written at the next period
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Stops the periodic report after a last one and unregisters the MBean.
+     * </p>
+     *
+     * @param snapshot the file where the last snapshot is written, {@code null} if none
+     * @param progress the stream where the last progress line is printed, {@code null} if none
+     * @throws JMException if the MBean can't be unregistered
+     */
+    public synchronized void close(final File snapshot, final PrintStream progress) throws JMException {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+
+        report(snapshot, progress, true);
+
+        if (name != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            name = null;
+        }
+    }
+
+    /**
+     * <p>
+     * Gets the registration steps with metrics, sorted.
+     * </p>
+     *
+     * @return the steps
+     */
+    private Set<String> steps() {
+        final Set<String> retval = new TreeSet<>(latencies.keySet());
+        retval.addAll(outcomes.keySet());
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Escapes a string in a JSON document.
+     * </p>
+     *
+     * @param s the string
+     * @return the escaped string
+     */
+    private static String escape(final String s) {
+        final StringBuilder retval = new StringBuilder(s.length());
+
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+
+            if (c == '"' || c == '\\') {
+                retval.append('\\').append(c);
+            } else if (c < ' ') {
+                retval.append(String.format("\\u%04x", (int) c));
+            } else {
+                retval.append(c);
+            }
+        }
+
+        return retval.toString();
+    }
+}
@@ -0,0 +1,54 @@
+package com.github.gdrouet.jtester;
+
+/**
+ * <p>
+ * Management interface of {@link PipelineMetrics} exposed through JMX.
+ * </p>
+ */
+public interface PipelineMetricsMBean {
+
+    /**
+     * <p>
+     * Gets the number of (registration, student) cells submitted for grading.
+     * </p>
+     *
+     * @return the number of cells
+     */
+    long getTotalCells();
+
+    /**
+     * <p>
+     * Gets the number of cells graded so far.
+     * </p>
+     *
+     * @return the number of cells
+     */
+    long getCompletedCells();
+
+    /**
+     * <p>
+     * Gets the number of cells graded per second since the metrics have been created.
+     * </p>
+     *
+     * @return the throughput
+     */
+    double getThroughput();
+
+    /**
+     * <p>
+     * Estimates the time needed to grade the remaining cells at the current throughput.
+     * </p>
+     *
+     * @return the estimated time in seconds, -1 if unknown
+     */
+    long getEtaSeconds();
+
+    /**
+     * <p>
+     * Gets a snapshot of all the metrics in JSON.
+     * </p>
+     *
+     * @return the snapshot
+     */
+    String getSnapshot();
+}
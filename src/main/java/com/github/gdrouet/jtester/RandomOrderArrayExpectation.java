@@ -1,7 +1,6 @@
 package com.github.gdrouet.jtester;
 
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Expects an array does not contain an ordered suite of integers.
@@ -22,24 +21,33 @@ public class RandomOrderArrayExpectation extends Expectation {
      */
     @Override
     public boolean isResultExpected(final String expected, final String ... result) {
-        final Matcher matcher = Pattern.compile(expected).matcher(result[0]);
+        final Matcher matcher = pattern(expected).matcher(result[0]);
+        final IntArrayScanner array = new IntArrayScanner();
         boolean match = false;
 
         while (matcher.find()) {
             match = true;
-            final String[] array = matcher.group(1).split(", ");
-            final int maxSequence = array.length / 10;
+            array.reset(result[0], matcher.start(1), matcher.end(1));
+            final int length = array.count();
+            final int maxSequence = length / 10;
             int diff = 0;
             int seq = 0;
 
-            for (int i = 1; i < array.length && seq < maxSequence; i++) {
-                int it = Integer.parseInt(array[i]) - Integer.parseInt(array[i - 1]);
+            if (length > 1 && maxSequence > 0) {
+                int previous = array.nextInt();
 
-                if (it == diff) {
-                    seq++;
-                } else {
-                    diff = it;
-                    seq = 0;
+                for (int i = 1; i < length && seq < maxSequence; i++) {
+                    final int current = array.nextInt();
+                    final int it = current - previous;
+
+                    if (it == diff) {
+                        seq++;
+                    } else {
+                        diff = it;
+                        seq = 0;
+                    }
+
+                    previous = current;
                 }
             }
 
@@ -0,0 +1,67 @@
+package com.github.gdrouet.jtester;
+
+/**
+ * <p>
+ * An expectation checking the result with another expectation and requiring the submission to consume at most a
+ * given ratio of the CPU time consumed by the reference solution. CPU time is used because it is less sensitive to
+ * the load of the machine than the elapsed time. Any profile is accepted when there is no reference.
+ * </p>
+ */
+public class ReferenceRatioExpectation extends Expectation {
+
+    /**
+     * The expectation checking the result.
+     */
+    private final Expectation delegate;
+
+    /**
+     * Maximum ratio between the CPU time of the submission and the one of the reference.
+     */
+    private final double maxRatio;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param e the expectation checking the result
+     * @param ratio the maximum ratio, 2 to require running within twice the time of the reference
+     */
+    public ReferenceRatioExpectation(final Expectation e, final double ratio) {
+        super(e.getFile(), e.getNumberOfExecutions());
+        delegate = e;
+        maxRatio = ratio;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isResultExpected(final String expected, final String... result) {
+        return delegate.isResultExpected(expected, result);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isDecided(final String expected, final String... result) {
+        return delegate.isDecided(expected, result);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isRejected(final String expected, final byte[] output, final int from, final int to) {
+        return delegate.isRejected(expected, output, from, to);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isProfileExpected(final ExecutionProfile profile, final ExecutionProfile reference) {
+        return reference == null || profile.getCpuTime() <= reference.getCpuTime() * maxRatio;
+    }
+}
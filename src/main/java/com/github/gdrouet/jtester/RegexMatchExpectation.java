@@ -1,7 +1,5 @@
 package com.github.gdrouet.jtester;
 
-import java.util.regex.Pattern;
-
 /**
  * Expectation based on pattern matching.
  */
@@ -21,6 +19,6 @@ public class RegexMatchExpectation extends Expectation {
      */
     @Override
     public boolean isResultExpected(final String e, final String ... s) {
-        return Pattern.matches(e, s[0]);
+        return pattern(e).matcher(s[0]).matches();
     }
 }
@@ -0,0 +1,87 @@
+package com.github.gdrouet.jtester;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * <p>
+ * Measures the resources consumed by the current thread from the creation of the meter: elapsed time, CPU time and
+ * bytes allocated in the heap. Allocations are only measured when the JVM provides
+ * {@code com.sun.management.ThreadMXBean}, CPU time is 0 when the JVM does not measure it.
+ * </p>
+ */
+public final class ResourceMeter {
+
+    /**
+     * The bean measuring the threads.
+     */
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /**
+     * Elapsed time at the beginning.
+     */
+    private final long wall;
+
+    /**
+     * CPU time at the beginning.
+     */
+    private final long cpu;
+
+    /**
+     * Allocated bytes at the beginning.
+     */
+    private final long allocated;
+
+    /**
+     * <p>
+     * Starts measuring the current thread.
+     * </p>
+     */
+    public ResourceMeter() {
+        allocated = allocatedBytes();
+        cpu = cpuTime();
+        wall = System.nanoTime();
+    }
+
+    /**
+     * <p>
+     * Builds the result of the execution measured by this meter, which must be the execution of the current thread.
+     * </p>
+     *
+     * @param status the status
+     * @param os the captured output
+     * @return the result with the resources consumed since the creation of this meter
+     */
+    public ExecutionResult result(final String status, final CaptureStream os) {
+        final long w = System.nanoTime() - wall;
+        final long c = cpuTime() - cpu;
+        final long a = allocatedBytes() - allocated;
+        return new ExecutionResult(status, os.toString(), w, Math.max(c, 0), Math.max(a, 0), os.size());
+    }
+
+    /**
+     * <p>
+     * Gets the CPU time of the current thread.
+     * </p>
+     *
+     * @return the time in nanoseconds, 0 if not measured
+     */
+    private static long cpuTime() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? Math.max(THREADS.getCurrentThreadCpuTime(), 0) : 0;
+    }
+
+    /**
+     * <p>
+     * Gets the number of bytes allocated by the current thread.
+     * </p>
+     *
+     * @return the number of bytes, 0 if not measured
+     */
+    private static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            return Math.max(((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId()), 0);
+        }
+
+        return 0;
+    }
+}
@@ -0,0 +1,320 @@
+package com.github.gdrouet.jtester;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BiConsumer;
+
+/**
+ * <p>
+ * A durable store of the report. Each result is appended to a log file as soon as it is known, one line per
+ * (student, step) cell with a hash of the inputs which produced it. A run interrupted at any time can be resumed: a
+ * cell whose inputs did not change since it was stored is not graded again. A removed cell is logged as a line without
+ * hash. The log is compacted when it is opened if most of its lines have been superseded.
+ * </p>
+ */
+public class ResultStore {
+
+    /**
+     * <p>
+     * A stored cell.
+     * </p>
+     */
+    private static final class Cell {
+
+        /**
+         * The hash of the inputs.
+         */
+        private final String hash;
+
+        /**
+         * The result.
+         */
+        private final String value;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param h the hash
+         * @param v the result
+         */
+        private Cell(final String h, final String v) {
+            hash = h;
+            value = v;
+        }
+    }
+
+    /**
+     * The log file.
+     */
+    private final File file;
+
+    /**
+     * The last cell of each step for each student, students being sorted.
+     */
+    private final ConcurrentSkipListMap<String, ConcurrentMap<String, Cell>> cells;
+
+    /**
+     * Appends to the log.
+     */
+    private final Writer log;
+
+    /**
+     * <p>
+     * Builds a new instance and loads the given log file if it exists.
+     * </p>
+     *
+     * @param f the log file
+     * @throws IOException if the log can't be read
+     */
+    public ResultStore(final File f) throws IOException {
+        file = f;
+        cells = new ConcurrentSkipListMap<>();
+        int lines = 0;
+        int size = 0;
+
+        if (file.isFile()) {
+            truncate();
+
+            try (final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                String line;
+
+                while ((line = reader.readLine()) != null) {
+                    final String[] fields = line.split("\t", -1);
+
+                    // Ignore a malformed line
+                    if (fields.length == 4) {
+                        lines++;
+
+                        // A removed cell has no hash
+                        if (fields[2].isEmpty()) {
+                            final Map<String, Cell> row = cells.get(fields[0]);
+
+                            if (row != null && row.remove(fields[1]) != null) {
+                                size--;
+                            }
+                        } else if (cells.computeIfAbsent(fields[0], k -> new ConcurrentHashMap<>()).put(fields[1], new Cell(fields[2], fields[3])) == null) {
+                            size++;
+                        }
+                    }
+                }
+            }
+        }
+
+        if (lines > size * 2) {
+            compact();
+        }
+
+        log = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * <p>
+     * Removes the last line of the log if it has been truncated by a crash, so the next line is not appended to it.
+     * </p>
+     *
+     * @throws IOException if the log can't be written
+     */
+    private void truncate() throws IOException {
+        try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long end = raf.length();
+
+            while (end > 0) {
+                raf.seek(end - 1);
+
+                if (raf.read() == '\n') {
+                    break;
+                }
+
+                end--;
+            }
+
+            raf.setLength(end);
+        }
+    }
+
+    /**
+     * <p>
+     * Computes the hash of some inputs.
+     * </p>
+     *
+     * @param inputs the inputs
+     * @return the hash
+     */
+    public static String hash(final byte[]... inputs) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+            // Each input is prefixed by its length so the boundaries are part of the hash
+            for (final byte[] input : inputs) {
+                for (int shift = 24; shift >= 0; shift -= 8) {
+                    digest.update((byte) (input.length >>> shift));
+                }
+
+                digest.update(input);
+            }
+
+            final StringBuilder retval = new StringBuilder(64);
+
+            for (final byte b : digest.digest()) {
+                retval.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+
+            return retval.toString();
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException(nsae);
+        }
+    }
+
+    /**
+     * <p>
+     * Gets a stored result.
+     * </p>
+     *
+     * @param student the student
+     * @param step the step of the registration
+     * @param hash the hash of the current inputs
+     * @return the result, {@code null} if not stored or if the inputs changed
+     */
+    public String get(final String student, final String step, final String hash) {
+        final Map<String, Cell> row = cells.get(student);
+        final Cell cell = row == null ? null : row.get(step);
+        return cell != null && cell.hash.equals(hash) ? cell.value : null;
+    }
+
+    /**
+     * <p>
+     * Appends a result to the log and flushes it.
+     * </p>
+     *
+     * @param student the student
+     * @param step the step of the registration
+     * @param hash the hash of the inputs
+     * @param value the result
+     * @throws IOException if the log can't be written
+     */
+    public void put(final String student, final String step, final String hash, final String value) throws IOException {
+        final Cell cell = new Cell(hash, value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' '));
+
+        synchronized (this) {
+            log.write(student + '\t' + step + '\t' + hash + '\t' + cell.value + '\n');
+            log.flush();
+        }
+
+        cells.computeIfAbsent(student, k -> new ConcurrentHashMap<>()).put(step, cell);
+    }
+
+    /**
+     * <p>
+     * Appends the removal of a result to the log and flushes it.
+     * </p>
+     *
+     * @param student the student
+     * @param step the step of the registration
+     * @throws IOException if the log can't be written
+     */
+    public void remove(final String student, final String step) throws IOException {
+        synchronized (this) {
+            log.write(student + '\t' + step + "\t\t\n");
+            log.flush();
+        }
+
+        final Map<String, Cell> row = cells.get(student);
+
+        if (row != null) {
+            row.remove(step);
+        }
+    }
+
+    /**
+     * <p>
+     * Removes the results of a step of the students not given.
+     * </p>
+     *
+     * @param step the step of the registration
+     * @param students the students whose result is kept
+     * @throws IOException if the log can't be written
+     */
+    public void retain(final String step, final Set<String> students) throws IOException {
+        for (final Map.Entry<String, ConcurrentMap<String, Cell>> row : cells.entrySet()) {
+            if (!students.contains(row.getKey()) && row.getValue().containsKey(step)) {
+                remove(row.getKey(), step);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Streams the stored results, one student after the other in order.
+     * </p>
+     *
+     * @param consumer receives each student with the result associated to each step
+     */
+    public void forEach(final BiConsumer<String, Map<String, String>> consumer) {
+        for (final Map.Entry<String, ConcurrentMap<String, Cell>> row : cells.entrySet()) {
+            if (row.getValue().isEmpty()) {
+                continue;
+            }
+
+            final Map<String, String> values = new ConcurrentHashMap<>();
+
+            for (final Map.Entry<String, Cell> cell : row.getValue().entrySet()) {
+                values.put(cell.getKey(), cell.getValue().value);
+            }
+
+            consumer.accept(row.getKey(), Collections.unmodifiableMap(values));
+        }
+    }
+
+    /**
+     * <p>
+     * Rewrites the log with the last cell of each step for each student only.
+     * </p>
+     *
+     * @throws IOException if the log can't be written
+     */
+    private void compact() throws IOException {
+        final File tmp = new File(file.getPath() + ".tmp");
+
+        try (final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8))) {
+            for (final Map.Entry<String, ConcurrentMap<String, Cell>> row : cells.entrySet()) {
+                for (final Map.Entry<String, Cell> cell : row.getValue().entrySet()) {
+                    writer.write(row.getKey() + '\t' + cell.getKey() + '\t' + cell.getValue().hash + '\t' + cell.getValue().value + '\n');
+                }
+            }
+        }
+
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * <p>
+     * Closes the log.
+     * </p>
+     *
+     * @throws IOException if the log can't be closed
+     */
+    public synchronized void close() throws IOException {
+        log.close();
+    }
+}
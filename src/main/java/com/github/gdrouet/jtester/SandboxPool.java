@@ -0,0 +1,371 @@
+package com.github.gdrouet.jtester;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>
+ * A pool of pre-started worker JVMs running {@link SandboxWorker}. Each execution is sent to an idle worker through
+ * a loopback connection accepted once when the worker starts, so the code under test is isolated in another process
+ * without paying the JVM startup for each execution. The standard streams of the worker are not used by the protocol:
+ * the code under test can't forge a response by writing to them. Each request carries a random nonce echoed by the
+ * response and the size of the response is checked, any unexpected response is reported as "Exit".
+ * </p>
+ * <p>
+ * A worker is killed when the execution exceeds its timeout, the worker itself reports "CPU" and exits when the
+ * execution exceeds its CPU time budget. A worker is replaced after a configured number of executions, after any
+ * execution which did not succeed and after any execution leaving threads alive. When a replacement can't be started,
+ * its slot is started again by the next execution using it, which fails with an {@link IOException} if it still can't.
+ * </p>
+ */
+public class SandboxPool {
+
+    /**
+     * <p>
+     * A worker process.
+     * </p>
+     */
+    private static final class Worker {
+
+        /**
+         * The process, {@code null} if the worker could not be started.
+         */
+        private final Process process;
+
+        /**
+         * The connection with the process.
+         */
+        private final Socket socket;
+
+        /**
+         * Sends requests.
+         */
+        private final DataOutputStream requests;
+
+        /**
+         * Receives responses.
+         */
+        private final DataInputStream responses;
+
+        /**
+         * Number of executions.
+         */
+        private int runs;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param p the process, {@code null} for a slot whose worker could not be started
+         * @param s the connection with the process, {@code null} for a slot whose worker could not be started
+         * @throws IOException if the streams of the connection can't be opened
+         */
+        private Worker(final Process p, final Socket s) throws IOException {
+            process = p;
+            socket = s;
+            requests = s == null ? null : new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            responses = s == null ? null : new DataInputStream(new BufferedInputStream(s.getInputStream()));
+        }
+
+        /**
+         * <p>
+         * Kills the process.
+         * </p>
+         */
+        private void kill() {
+            if (process != null) {
+                process.destroyForcibly();
+
+                try {
+                    socket.close();
+                } catch (IOException ioe) {
+                    // Already closed by the process
+                }
+            }
+        }
+    }
+
+    /**
+     * Maximum time in milliseconds for a started worker to connect.
+     */
+    private static final int CONNECT_TIMEOUT = 30000;
+
+    /**
+     * Replaces the standard input and output of the workers.
+     */
+    private static final File NULL_FILE = new File(System.getProperty("os.name").startsWith("Windows") ? "NUL" : "/dev/null");
+
+    /**
+     * The command starting a worker.
+     */
+    private final List<String> command;
+
+    /**
+     * Idle workers.
+     */
+    private final BlockingQueue<Worker> idle;
+
+    /**
+     * Number of executions before a worker is replaced.
+     */
+    private final int maxRuns;
+
+    /**
+     * Kills the workers exceeding their timeout.
+     */
+    private final ScheduledExecutorService watchdog;
+
+    /**
+     * Generates the nonces.
+     */
+    private final Random nonces;
+
+    /**
+     * The pool has been shut down.
+     */
+    private volatile boolean closed;
+
+    /**
+     * <p>
+     * Builds a new instance and starts the workers.
+     * </p>
+     *
+     * @param size the number of workers
+     * @param runs the number of executions before a worker is replaced
+     * @param jvmOptions the options of the worker JVMs
+     * @throws IOException if a worker can't be started
+     */
+    public SandboxPool(final int size, final int runs, final String... jvmOptions) throws IOException {
+        command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(Arrays.asList(jvmOptions));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(SandboxWorker.class.getName());
+        idle = new LinkedBlockingQueue<>();
+        maxRuns = runs;
+        nonces = new SecureRandom();
+        watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread retval = new Thread(r, "sandbox-watchdog");
+            retval.setDaemon(true);
+            return retval;
+        });
+
+        for (int i = 0; i < size; i++) {
+            idle.add(start());
+        }
+    }
+
+    /**
+     * <p>
+     * Starts a worker and waits for its connection.
+     * </p>
+     *
+     * @return the worker
+     * @throws IOException if the process can't be started or does not connect
+     */
+    private Worker start() throws IOException {
+        try (final ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(CONNECT_TIMEOUT);
+            final List<String> c = new ArrayList<>(command);
+            c.add(String.valueOf(server.getLocalPort()));
+            final Process process = new ProcessBuilder(c)
+                    .redirectInput(ProcessBuilder.Redirect.from(NULL_FILE))
+                    .redirectOutput(ProcessBuilder.Redirect.appendTo(NULL_FILE))
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+
+            try {
+                return new Worker(process, server.accept());
+            } catch (IOException ioe) {
+                process.destroyForcibly();
+                throw ioe;
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Executes a 'main' method in a worker.
+     * </p>
+     *
+     * @param mainClass the binary name of the class containing the 'main' method
+     * @param args the arguments
+     * @param classes the bytecode associated to the binary name of each class
+     * @param outputLimit the maximum number of bytes captured
+     * @param timeout the maximum duration of the execution
+     * @param cpuBudget the maximum CPU time consumed by the threads of the execution, 0 if unlimited
+     * @param unit the timeout and budget unit
+     * @param operationBudget the maximum number of operations counted by {@link OperationCounter}, 0 if unlimited
+     * @return the result, "Timeout" status if the worker has been killed, "Exit" status if the worker died or sent an
+     * unexpected response
+     * @throws IOException if no worker is running and a new one can't be started
+     */
+    public ExecutionResult run(final String mainClass,
+                               final String[] args,
+                               final Map<String, byte[]> classes,
+                               final int outputLimit,
+                               final long timeout,
+                               final long cpuBudget,
+                               final TimeUnit unit,
+                               final long operationBudget) throws IOException {
+        Worker worker;
+
+        try {
+            worker = idle.take();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+
+        // The replacement of a retired worker failed, try again
+        if (worker.process == null) {
+            try {
+                worker = start();
+            } catch (IOException ioe) {
+                idle.add(worker);
+                throw ioe;
+            }
+        }
+
+        final Worker w = worker;
+        final AtomicBoolean killed = new AtomicBoolean();
+        final ScheduledFuture<?> kill = watchdog.schedule(() -> {
+            killed.set(true);
+            w.kill();
+        }, timeout, unit);
+        final long nonce = nonces.nextLong();
+        ExecutionResult retval;
+        boolean retire = true;
+
+        try {
+            worker.requests.writeLong(nonce);
+            worker.requests.writeUTF(mainClass);
+            worker.requests.writeInt(args.length);
+
+            for (final String arg : args) {
+                worker.requests.writeUTF(arg);
+            }
+
+            worker.requests.writeInt(classes.size());
+
+            for (final Map.Entry<String, byte[]> c : classes.entrySet()) {
+                worker.requests.writeUTF(c.getKey());
+                worker.requests.writeInt(c.getValue().length);
+                worker.requests.write(c.getValue());
+            }
+
+            worker.requests.writeInt(outputLimit);
+            worker.requests.writeLong(unit.toNanos(cpuBudget));
+            worker.requests.writeLong(operationBudget);
+            worker.requests.flush();
+
+            if (worker.responses.readLong() != nonce) {
+                throw new IOException("Unexpected response");
+            }
+
+            final String status = worker.responses.readUTF();
+            final int length = worker.responses.readInt();
+
+            // A captured byte is encoded with at most 3 bytes
+            if (length < 0 || length > 3L * outputLimit) {
+                throw new IOException("Unexpected output size " + length);
+            }
+
+            final byte[] output = new byte[length];
+            worker.responses.readFully(output);
+            retval = new ExecutionResult(status,
+                    new String(output, StandardCharsets.UTF_8),
+                    worker.responses.readLong(),
+                    worker.responses.readLong(),
+                    worker.responses.readLong(),
+                    worker.responses.readLong());
+            retire = worker.responses.readBoolean();
+        } catch (Throwable t) {
+            // The worker has been killed, the code under test has stopped the JVM or broken the protocol
+            retval = new ExecutionResult(killed.get() ? "Timeout" : "Exit", null);
+        } finally {
+            kill.cancel(false);
+        }
+
+        // The state of the JVM can't be trusted after a failure or with threads left by the code under test
+        if (retire || killed.get() || !retval.isSuccess() || ++worker.runs >= maxRuns) {
+            worker.kill();
+            release(null);
+        } else {
+            release(worker);
+        }
+
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Gives back a worker to the pool, or starts a new one to replace a retired worker. When the new worker can't be
+     * started, its slot is kept empty until the next execution using it.
+     * </p>
+     *
+     * @param worker the worker, {@code null} if retired
+     */
+    private void release(final Worker worker) {
+        if (closed) {
+            if (worker != null) {
+                worker.kill();
+            }
+        } else if (worker != null) {
+            idle.add(worker);
+        } else {
+            Worker replacement;
+
+            try {
+                replacement = start();
+            } catch (IOException ioe) {
+                try {
+                    replacement = new Worker(null, null);
+                } catch (IOException cannot) {
+                    throw new IllegalStateException(cannot);
+                }
+            }
+
+            idle.add(replacement);
+        }
+    }
+
+    /**
+     * <p>
+     * Stops all the idle workers. Busy workers are stopped when their execution ends.
+     * </p>
+     */
+    public void shutdown() {
+        closed = true;
+        watchdog.shutdownNow();
+        Worker worker;
+
+        while ((worker = idle.poll()) != null) {
+            worker.kill();
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.github.gdrouet.jtester;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>
+ * Entry point of a worker JVM started by {@link SandboxPool}. The worker connects to the loopback port given as
+ * argument, reads execution requests from the connection, runs the 'main' method of the received bytecode and writes
+ * the result to the connection. Output of the executed code is captured, anything printed outside a capture goes to
+ * the standard error.
+ * </p>
+ * <p>
+ * A request contains a nonce, the main class name, the arguments, the classes, the output limit, the CPU time budget
+ * in nanoseconds and the operation budget of the classes instrumented by {@link OperationCounter}. A response contains
+ * the nonce of the request, a status, the captured output, the resources consumed by the execution, see
+ * {@link ExecutionResult}, and whether threads started by the execution are still alive, in which case the worker
+ * must be retired. The status is "OK" in case of success, otherwise the value reported in the student's report. When
+ * the threads of an execution consume more CPU time than the budget, the worker replies "CPU" and halts, since
+ * the code under test can't be stopped safely.
+ * </p>
+ */
+public final class SandboxWorker {
+
+    /**
+     * Interval between two checks of the CPU time budget in milliseconds.
+     */
+    private static final long POLL = 10;
+
+    /**
+     * <p>
+     * Prevent instantiation.
+     * </p>
+     */
+    private SandboxWorker() {
+    }
+
+    /**
+     * <p>
+     * Serves requests until the connection is closed.
+     * </p>
+     *
+     * @param args the loopback port of the pool
+     * @throws IOException if the protocol is broken
+     */
+    public static void main(final String[] args) throws IOException {
+        final Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0]));
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+        // Anything printed outside a capture can be read when debugging
+        System.setOut(new PrintStream(new FileOutputStream(FileDescriptor.err), true));
+        final OutputCapture capture = OutputCapture.install();
+
+        while (true) {
+            final long nonce;
+
+            try {
+                nonce = in.readLong();
+            } catch (EOFException eof) {
+                return;
+            }
+
+            final String mainClass = in.readUTF();
+
+            final String[] mainArgs = new String[in.readInt()];
+
+            for (int i = 0; i < mainArgs.length; i++) {
+                mainArgs[i] = in.readUTF();
+            }
+
+            final Map<String, byte[]> classes = new HashMap<>();
+
+            for (int i = in.readInt(); i > 0; i--) {
+                final String name = in.readUTF();
+                final byte[] b = new byte[in.readInt()];
+                in.readFully(b);
+                classes.put(name, b);
+            }
+
+            final CaptureStream os = new CaptureStream(in.readInt(), null, null);
+            final long cpuBudget = in.readLong();
+            final long operations = in.readLong();
+            final OperationBudget operationBudget = operations > 0 ? new OperationBudget(operations) : null;
+            final AtomicBoolean replied = new AtomicBoolean();
+            final Set<Thread> threads = new HashSet<>(Thread.getAllStackTraces().keySet());
+            final Thread budget = cpuBudget > 0 ? watch(cpuBudget, Thread.currentThread().getId(), threads, nonce, replied, out) : null;
+
+            if (budget != null) {
+                threads.add(budget);
+            }
+            String status = ExecutionResult.OK;
+            ResourceMeter meter = null;
+
+            try {
+                capture.begin(os);
+
+                if (operationBudget != null) {
+                    operationBudget.begin();
+                }
+
+                final Class<?> clazz = new BytecodeClassLoader(SandboxWorker.class.getClassLoader(), classes).loadClass(mainClass);
+                final Method main = clazz.getMethod("main", String[].class);
+                meter = new ResourceMeter();
+                main.invoke(null, (Object) mainArgs);
+            } catch (ClassNotFoundException e) {
+                status = "CNFE";
+            } catch (Exception | OperationBudget.Exceeded | ExceptionInInitializerError ex) {
+                status = "Invoke";
+            } finally {
+                OperationBudget.end();
+                capture.end();
+            }
+
+            if (operationBudget != null && operationBudget.isExceeded()) {
+                status = "Budget";
+            }
+
+            if (os.isOverflow()) {
+                status = "Overflow";
+            }
+
+            if (budget != null) {
+                budget.interrupt();
+            }
+
+            // The budget has been exceeded meanwhile, the process is halting
+            if (!replied.compareAndSet(false, true)) {
+                return;
+            }
+
+            reply(out, nonce, meter != null ? meter.result(status, os) : new ExecutionResult(status, os.toString()),
+                    isLeaking(threads));
+        }
+    }
+
+    /**
+     * <p>
+     * Indicates if threads started during an execution are still alive.
+     * </p>
+     *
+     * @param before the threads alive before the execution
+     * @return {@code true} if a thread outlives the execution
+     */
+    private static boolean isLeaking(final Set<Thread> before) {
+        for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (!before.contains(thread) && thread.isAlive()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * <p>
+     * Writes a response.
+     * </p>
+     *
+     * @param out the protocol output
+     * @param nonce the nonce of the request
+     * @param result the result of the execution
+     * @param retire the worker must be retired
+     * @throws IOException if the protocol is broken
+     */
+    private static void reply(final DataOutputStream out, final long nonce, final ExecutionResult result, final boolean retire)
+            throws IOException {
+        final byte[] output = result.getOutput().getBytes(StandardCharsets.UTF_8);
+
+        synchronized (out) {
+            out.writeLong(nonce);
+            out.writeUTF(result.getStatus());
+            out.writeInt(output.length);
+            out.write(output);
+            out.writeLong(result.getWallTime());
+            out.writeLong(result.getCpuTime());
+            out.writeLong(result.getAllocatedBytes());
+            out.writeLong(result.getOutputBytes());
+            out.writeBoolean(retire);
+            out.flush();
+        }
+    }
+
+    /**
+     * <p>
+     * Starts a thread checking the CPU time consumed during an execution by the thread running it and the threads it
+     * started, like an execution in the JVM of {@link JTester}. When the budget is exceeded, the thread replies "CPU"
+     * unless the execution already replied and halts the JVM. The thread is interrupted when the execution ends.
+     * </p>
+     *
+     * @param cpuBudget the budget in nanoseconds
+     * @param threadId the thread running the execution
+     * @param threads the threads alive before the execution
+     * @param nonce the nonce of the request
+     * @param replied set when a response has been written for the execution
+     * @param out the protocol output
+     * @return the started thread
+     */
+    private static Thread watch(final long cpuBudget,
+                                final long threadId,
+                                final Set<Thread> threads,
+                                final long nonce,
+                                final AtomicBoolean replied,
+                                final DataOutputStream out) {
+        final Set<Long> before = new HashSet<>();
+
+        for (final Thread thread : threads) {
+            before.add(thread.getId());
+        }
+
+        final Map<Long, Long> cpu = new HashMap<>();
+        final long start = cpuTime(threadId, before, cpu);
+        final Thread retval = new Thread(() -> {
+            try {
+                while (cpuTime(threadId, before, cpu) - start < cpuBudget) {
+                    Thread.sleep(POLL);
+                }
+
+                if (replied.compareAndSet(false, true)) {
+                    reply(out, nonce, new ExecutionResult("CPU", ""), true);
+                    Runtime.getRuntime().halt(1);
+                }
+            } catch (InterruptedException ie) {
+                // Execution ended within the budget
+            } catch (IOException ioe) {
+                Runtime.getRuntime().halt(1);
+            }
+        }, "cpu-budget");
+        retval.setDaemon(true);
+        retval.start();
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Gets the CPU time consumed by the thread running an execution and by the threads started since the execution
+     * began, the calling thread excepted. The JIT compiler, the garbage collector and the worker's own threads are not
+     * counted. The last measure of each thread is kept, so the time of the threads which already died is still
+     * counted.
+     * </p>
+     *
+     * @param threadId the thread running the execution
+     * @param before the identifiers of the threads alive before the execution
+     * @param cpu the last CPU time measured for each thread identifier
+     * @return the total CPU time in nanoseconds
+     */
+    private static long cpuTime(final long threadId, final Set<Long> before, final Map<Long, Long> cpu) {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        final long self = Thread.currentThread().getId();
+
+        for (final long id : bean.getAllThreadIds()) {
+            if (id == threadId || id != self && !before.contains(id)) {
+                final long time = bean.getThreadCpuTime(id);
+
+                // Not supported, disabled or thread died meanwhile
+                if (time > 0) {
+                    cpu.put(id, time);
+                }
+            }
+        }
+
+        long retval = 0;
+
+        for (final long time : cpu.values()) {
+            retval += time;
+        }
+
+        return retval;
+    }
+}
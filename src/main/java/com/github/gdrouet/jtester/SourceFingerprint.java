@@ -0,0 +1,104 @@
+package com.github.gdrouet.jtester;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * <p>
+ * Computes a fingerprint of a file to test which does not depend on its layout. The content is split into tokens with
+ * the same rules as {@link TokenSourceRewriter}: whitespace and comments are dropped, string and character literals
+ * are kept as is, whitespace between two operator characters is kept since it separates operators. Two files with the
+ * same fingerprint are rewritten into the same code, so they share the same result except for the line numbers of the
+ * compilation errors.
+ * </p>
+ */
+public final class SourceFingerprint {
+
+    /**
+     * Characters that can be combined into an operator.
+     */
+    private static final String OPERATORS = "=<>!&|+-*/%^~?:.";
+
+    /**
+     * <p>
+     * Prevent instantiation.
+     * </p>
+     */
+    private SourceFingerprint() {
+    }
+
+    /**
+     * <p>
+     * Computes the fingerprint of a file to test.
+     * </p>
+     *
+     * @param fileTest the class name to test, renamed when the file is merged
+     * @param content the file content
+     * @return the hexadecimal SHA-256 hash of the tokens
+     */
+    public static String of(final String fileTest, final CharSequence content) {
+        final MessageDigest digest;
+
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException(nsae);
+        }
+
+        digest.update(fileTest.getBytes(StandardCharsets.UTF_8));
+        final int len = content.length();
+        int i = 0;
+        boolean operator = false;
+        boolean spaced = false;
+
+        while (i < len) {
+            final char c = content.charAt(i);
+            int end = i + 1;
+
+            if (c == '/' || c == '"' || c == '\'') {
+                end = TokenSourceRewriter.skipLiteral(content, i);
+
+                // Comments are dropped, a lone slash is an operator
+                if (c == '/' && end - i > 1) {
+                    i = end;
+                    spaced = true;
+                    continue;
+                }
+            } else if (Character.isWhitespace(c)) {
+                i++;
+                spaced = true;
+                continue;
+            } else if (Character.isJavaIdentifierPart(c)) {
+                // Identifiers, keywords and numbers, separated from each other by whitespace only
+                while (end < len && (Character.isJavaIdentifierPart(content.charAt(end)) || content.charAt(end) == '.'
+                        && Character.isDigit(c))) {
+                    end++;
+                }
+            }
+
+            // Separate the tokens so that "a b" and "ab" differ
+            digest.update((byte) 0);
+
+            // Operators are hashed one character at a time, "a + +b" and "a ++b" differ
+            final boolean o = end - i == 1 && OPERATORS.indexOf(c) != -1;
+
+            if (o && operator && spaced) {
+                digest.update((byte) ' ');
+            }
+
+            digest.update(content.subSequence(i, end).toString().getBytes(StandardCharsets.UTF_8));
+            operator = o;
+            spaced = false;
+            i = end;
+        }
+
+        final StringBuilder retval = new StringBuilder(64);
+
+        for (final byte b : digest.digest()) {
+            retval.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return retval.toString();
+    }
+}
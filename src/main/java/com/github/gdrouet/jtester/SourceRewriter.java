@@ -0,0 +1,24 @@
+package com.github.gdrouet.jtester;
+
+/**
+ * <p>
+ * A source rewriter transforms each file merged into the single source compiled for a student. Rewriting must
+ * remove the package declaration and extract the imports because all the classes are compiled in one file.
+ * </p>
+ */
+public interface SourceRewriter {
+
+    /**
+     * <p>
+     * Rewrites the content of a file and appends the result to the merged source.
+     * </p>
+     *
+     * @param content the file content
+     * @param executor {@code true} if the file is the test executor which must keep its public class
+     * @param from the class name to rename
+     * @param to the new class name
+     * @param imports the import statements to put in top of the merged source
+     * @param out the merged source
+     */
+    void rewrite(CharSequence content, boolean executor, String from, String to, StringBuilder imports, StringBuilder out);
+}
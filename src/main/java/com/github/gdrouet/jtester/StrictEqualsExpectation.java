@@ -1,10 +1,18 @@
 package com.github.gdrouet.jtester;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * Expectation based on {@link String#equals(Object)}.
  */
 public class StrictEqualsExpectation extends Expectation {
 
+    /**
+     * Expected results encoded like the captured output.
+     */
+    private static final ConcurrentMap<String, byte[]> ENCODED = new ConcurrentHashMap<>();
+
     /**
      * Builds a new instance.
      *
@@ -21,4 +29,33 @@ public class StrictEqualsExpectation extends Expectation {
     public boolean isResultExpected(final String e, final String ... s) {
         return e.equals(s[0]);
     }
+
+    /**
+     * <p>
+     * Rejects the output as soon as it is not a prefix of the expected result.
+     * </p>
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isRejected(final String expected, final byte[] output, final int from, final int to) {
+        byte[] e = ENCODED.get(expected);
+
+        if (e == null) {
+            e = expected.getBytes();
+            ENCODED.putIfAbsent(expected, e);
+        }
+
+        if (to > e.length) {
+            return true;
+        }
+
+        for (int i = from; i < to; i++) {
+            if (output[i] != e[i]) {
+                return true;
+            }
+        }
+
+        return false;
+    }
 }
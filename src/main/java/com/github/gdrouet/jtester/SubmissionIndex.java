@@ -0,0 +1,398 @@
+package com.github.gdrouet.jtester;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitOption;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+
+/**
+ * <p>
+ * An index of the files to test, from the step directory to the files of each student. The test directory is
+ * walked once and each file name is parsed once with {@link JTester#FILE_TO_TEST_PATTERN}, then all the registrations
+ * share the index. The index is refreshed incrementally: only the directories whose modification time changed are
+ * listed again, the other files are checked individually.
+ * </p>
+ */
+public class SubmissionIndex {
+
+    /**
+     * <p>
+     * A file to test.
+     * </p>
+     */
+    public static final class Entry {
+
+        /**
+         * The file.
+         */
+        private final File file;
+
+        /**
+         * The student name.
+         */
+        private final String student;
+
+        /**
+         * The part of file name which represents the class name to test.
+         */
+        private final String fileTest;
+
+        /**
+         * Last modification of the file.
+         */
+        private long lastModified;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param f the file
+         * @param s the student name
+         * @param ft the class name to test
+         * @param lm the last modification
+         */
+        private Entry(final File f, final String s, final String ft, final long lm) {
+            file = f;
+            student = s;
+            fileTest = ft;
+            lastModified = lm;
+        }
+
+        /**
+         * <p>
+         * Gets the file.
+         * </p>
+         *
+         * @return the file
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * <p>
+         * Gets the student.
+         * </p>
+         *
+         * @return the student name
+         */
+        public String getStudent() {
+            return student;
+        }
+
+        /**
+         * <p>
+         * Gets the class name to test.
+         * </p>
+         *
+         * @return the part of file name which represents the class name to test
+         */
+        public String getFileTest() {
+            return fileTest;
+        }
+    }
+
+    /**
+     * <p>
+     * A step directory.
+     * </p>
+     */
+    private static final class Step {
+
+        /**
+         * The directory.
+         */
+        private final Path directory;
+
+        /**
+         * Last modification of the directory.
+         */
+        private long lastModified;
+
+        /**
+         * The files to test associated to their name.
+         */
+        private final Map<String, Entry> entries;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param d the directory
+         * @param lm the last modification
+         */
+        private Step(final Path d, final long lm) {
+            directory = d;
+            lastModified = lm;
+            entries = new TreeMap<>();
+        }
+    }
+
+    /**
+     * The test directory.
+     */
+    private final Path root;
+
+    /**
+     * Last modification of the test directory.
+     */
+    private long lastModified;
+
+    /**
+     * The step directories associated to their name.
+     */
+    private final Map<String, Step> steps;
+
+    /**
+     * <p>
+     * Builds a new instance and walks the test directory.
+     * </p>
+     *
+     * @param testDirectory the test directory
+     * @throws IOException if the directory can't be walked
+     */
+    public SubmissionIndex(final File testDirectory) throws IOException {
+        root = testDirectory.toPath();
+        steps = new TreeMap<>();
+        lastModified = Files.getLastModifiedTime(root).toMillis();
+
+        Files.walkFileTree(root, EnumSet.noneOf(FileVisitOption.class), 2, new SimpleFileVisitor<Path>() {
+
+            /**
+             * The step being walked.
+             */
+            private Step step;
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+                if (!dir.equals(root)) {
+                    step = new Step(dir, attrs.lastModifiedTime().toMillis());
+                    steps.put(dir.getFileName().toString(), step);
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && !file.getParent().equals(root)) {
+                    add(step, file, attrs);
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * <p>
+     * Parses a file name and adds the file to a step if it is a file to test.
+     * </p>
+     *
+     * @param step the step
+     * @param file the file
+     * @param attrs the file attributes
+     * @return the added entry, {@code null} if the file is not a file to test
+     */
+    private static Entry add(final Step step, final Path file, final BasicFileAttributes attrs) {
+        final String name = file.getFileName().toString();
+        final Matcher matcher = JTester.FILE_TO_TEST_PATTERN.matcher(name);
+
+        if (!matcher.find()) {
+            return null;
+        }
+
+        final Entry retval = new Entry(file.toFile(), matcher.group(2), matcher.group(7), attrs.lastModifiedTime().toMillis());
+        step.entries.put(name, retval);
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Finds the step directory whose name ends with the given string. Directories are sorted by name. A directory
+     * named exactly like the given string is the one where the students' directories are created, so it is only
+     * returned when no other directory matches.
+     * </p>
+     *
+     * @param endDirectory the end of the directory name
+     * @return the directory, {@code null} if not found
+     */
+    public synchronized File findDirectory(final String endDirectory) {
+        Step retval = null;
+
+        for (final Map.Entry<String, Step> step : steps.entrySet()) {
+            if (!step.getKey().endsWith(endDirectory)) {
+                continue;
+            } else if (!step.getKey().equals(endDirectory)) {
+                return step.getValue().directory.toFile();
+            }
+
+            retval = step.getValue();
+        }
+
+        return retval == null ? null : retval.directory.toFile();
+    }
+
+    /**
+     * <p>
+     * Gets the files to test of a step directory, sorted by name.
+     * </p>
+     *
+     * @param directory the step directory
+     * @return the files, empty if the directory is not indexed
+     */
+    public synchronized List<Entry> getEntries(final File directory) {
+        final Step step = steps.get(directory.getName());
+        return step == null ? Collections.<Entry>emptyList() : new ArrayList<>(step.entries.values());
+    }
+
+    /**
+     * <p>
+     * Updates the index with the changes made since the last refresh. The test directory and the step directories
+     * are listed again only if their modification time changed.
+     * </p>
+     *
+     * @return the files to test added or modified since the last refresh
+     * @throws IOException if I/O error occurs
+     */
+    public synchronized List<Entry> refresh() throws IOException {
+        final List<Entry> retval = new ArrayList<>();
+        final long rootModified = Files.getLastModifiedTime(root).toMillis();
+
+        // Step directories have been added or removed
+        if (rootModified != lastModified) {
+            lastModified = rootModified;
+            final Map<String, BasicFileAttributes> directories = list(root);
+            steps.keySet().retainAll(directories.keySet());
+
+            for (final Map.Entry<String, BasicFileAttributes> directory : directories.entrySet()) {
+                if (directory.getValue().isDirectory() && !steps.containsKey(directory.getKey())) {
+                    final Step step = new Step(root.resolve(directory.getKey()), -1);
+                    steps.put(directory.getKey(), step);
+                }
+            }
+        }
+
+        for (final Step step : steps.values()) {
+            final long stepModified;
+
+            try {
+                stepModified = Files.getLastModifiedTime(step.directory).toMillis();
+            } catch (NoSuchFileException nsfe) {
+                continue;
+            }
+
+            if (stepModified != step.lastModified) {
+                // Files have been added, removed or renamed
+                step.lastModified = stepModified;
+                refresh(step, list(step.directory), retval);
+            } else {
+                refresh(step.entries.values(), retval);
+            }
+        }
+
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Updates the files of a step listed again.
+     * </p>
+     *
+     * @param step the step
+     * @param files the files of the step directory
+     * @param changed the added or modified files
+     */
+    private static void refresh(final Step step, final Map<String, BasicFileAttributes> files, final List<Entry> changed) {
+        step.entries.keySet().retainAll(files.keySet());
+
+        for (final Map.Entry<String, BasicFileAttributes> file : files.entrySet()) {
+            final Entry entry = step.entries.get(file.getKey());
+
+            if (!file.getValue().isRegularFile()) {
+                continue;
+            } else if (entry == null) {
+                final Entry added = add(step, step.directory.resolve(file.getKey()), file.getValue());
+
+                if (added != null) {
+                    changed.add(added);
+                }
+            } else if (entry.lastModified != file.getValue().lastModifiedTime().toMillis()) {
+                entry.lastModified = file.getValue().lastModifiedTime().toMillis();
+                changed.add(entry);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Checks the modification time of each file of a step which has not been listed again.
+     * </p>
+     *
+     * @param entries the files
+     * @param changed the modified files
+     */
+    private static void refresh(final Collection<Entry> entries, final List<Entry> changed) {
+        for (final Iterator<Entry> it = entries.iterator(); it.hasNext();) {
+            final Entry entry = it.next();
+            final long modified = entry.file.lastModified();
+
+            if (modified == 0L) {
+                // Removed meanwhile
+                it.remove();
+            } else if (modified != entry.lastModified) {
+                entry.lastModified = modified;
+                changed.add(entry);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Lists a directory with the attributes of each child.
+     * </p>
+     *
+     * @param directory the directory
+     * @return the attributes associated to the name of each child
+     * @throws IOException if the directory can't be listed
+     */
+    private static Map<String, BasicFileAttributes> list(final Path directory) throws IOException {
+        final Map<String, BasicFileAttributes> retval = new TreeMap<>();
+
+        Files.walkFileTree(directory, EnumSet.noneOf(FileVisitOption.class), 1, new SimpleFileVisitor<Path>() {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                retval.put(file.getFileName().toString(), attrs);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        return retval;
+    }
+}
@@ -0,0 +1,286 @@
+package com.github.gdrouet.jtester;
+
+/**
+ * <p>
+ * Default {@link SourceRewriter} which applies all transformations in one pass over the characters. Comments, string
+ * and character literals are copied as is, so transformations only apply to the code:
+ * </p>
+ * <ul>
+ * <li>package declaration is removed</li>
+ * <li>java.* imports are extracted, others are removed</li>
+ * <li>the class to test is renamed</li>
+ * <li>public classes and interfaces become package private except in the test executor</li>
+ * <li>System.out.println statements can be removed except in the test executor</li>
+ * </ul>
+ */
+public class TokenSourceRewriter implements SourceRewriter {
+
+    /**
+     * Statement removed when output is excluded.
+     */
+    private static final String SYSOUT = "System.out.println(";
+
+    /**
+     * Exclude System.out.println not in executor file.
+     */
+    private final boolean excludeSysout;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param es exclude System.out.println statements not in executor file
+     */
+    public TokenSourceRewriter(final boolean es) {
+        excludeSysout = es;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void rewrite(final CharSequence content,
+                        final boolean executor,
+                        final String from,
+                        final String to,
+                        final StringBuilder imports,
+                        final StringBuilder out) {
+        final int len = content.length();
+        out.ensureCapacity(out.length() + len);
+        int i = 0;
+
+        while (i < len) {
+            final char c = content.charAt(i);
+
+            if (c == '/' || c == '"' || c == '\'') {
+                // Comments and literals are never transformed
+                final int end = skipLiteral(content, i);
+                out.append(content, i, end);
+                i = end;
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int end = i + 1;
+
+                while (end < len && Character.isJavaIdentifierPart(content.charAt(end))) {
+                    end++;
+                }
+
+                if (is(content, i, end, "package")) {
+                    // Remove any package declaration, we work in default package
+                    end = skipStatement(content, end);
+                } else if (is(content, i, end, "import")) {
+                    // No java.* import is necessary, put others in top of file
+                    final int start = i;
+                    end = skipStatement(content, end);
+
+                    if (indexOf(content, "java.", start, end) != -1) {
+                        imports.append(content, start, end);
+                    }
+                } else if (!executor && excludeSysout && startsWith(content, SYSOUT, i)) {
+                    end = skipStatement(content, i + SYSOUT.length());
+                } else if (!executor && is(content, i, end, "public") && isFollowedByType(content, end)) {
+                    // We put all classes in one file so we keep only the test executor class public
+                    end++;
+                } else if (is(content, i, end, from)) {
+                    // Rename class to test declaration/references with name in environment
+                    out.append(to);
+                } else {
+                    out.append(content, i, end);
+                }
+
+                i = end;
+            } else if (Character.isDigit(c)) {
+                // Numeric literal, suffixes are not identifiers
+                int end = i + 1;
+
+                while (end < len && (Character.isJavaIdentifierPart(content.charAt(end)) || content.charAt(end) == '.')) {
+                    end++;
+                }
+
+                out.append(content, i, end);
+                i = end;
+            } else {
+                out.append(c);
+                i++;
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Gets the end of the comment or literal starting at the given index.
+     * </p>
+     *
+     * @param content the content
+     * @param start the index of the first character
+     * @return the index following the comment or literal, {@code start + 1} if there is none
+     */
+    static int skipLiteral(final CharSequence content, final int start) {
+        final int len = content.length();
+        final char c = content.charAt(start);
+
+        if (c == '/') {
+            if (start + 1 < len && content.charAt(start + 1) == '/') {
+                final int end = indexOf(content, "\n", start, len);
+                return end == -1 ? len : end;
+            } else if (start + 1 < len && content.charAt(start + 1) == '*') {
+                final int end = indexOf(content, "*/", start + 2, len);
+                return end == -1 ? len : end + 2;
+            }
+
+            return start + 1;
+        }
+
+        // Text block
+        if (c == '"' && startsWith(content, "\"\"\"", start)) {
+            for (int i = start + 3; i < len; i++) {
+                if (content.charAt(i) == '\\') {
+                    i++;
+                } else if (startsWith(content, "\"\"\"", i)) {
+                    return i + 3;
+                }
+            }
+
+            return len;
+        }
+
+        // String or character literal
+        for (int i = start + 1; i < len; i++) {
+            final char e = content.charAt(i);
+
+            if (e == '\\') {
+                i++;
+            } else if (e == c || e == '\n') {
+                return i + 1;
+            }
+        }
+
+        return len;
+    }
+
+    /**
+     * <p>
+     * Gets the end of the statement containing the given index.
+     * </p>
+     *
+     * @param content the content
+     * @param start an index in the statement
+     * @return the index following the semicolon which ends the statement
+     */
+    private static int skipStatement(final CharSequence content, final int start) {
+        final int len = content.length();
+        int depth = 0;
+        int i = start;
+
+        while (i < len) {
+            final char c = content.charAt(i);
+
+            if (c == '/' || c == '"' || c == '\'') {
+                i = skipLiteral(content, i);
+            } else {
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                } else if (c == ';' && depth <= 0) {
+                    return i + 1;
+                }
+
+                i++;
+            }
+        }
+
+        return len;
+    }
+
+    /**
+     * <p>
+     * Indicates if the identifier found at the given index is followed by the class or interface keyword.
+     * </p>
+     *
+     * @param content the content
+     * @param end the index following the identifier
+     * @return {@code true} if a type declaration follows the identifier, {@code false} otherwise
+     */
+    private static boolean isFollowedByType(final CharSequence content, final int end) {
+        return end < content.length()
+                && content.charAt(end) == ' '
+                && (isWord(content, end + 1, "class") || isWord(content, end + 1, "interface"));
+    }
+
+    /**
+     * <p>
+     * Indicates if the given word is found at the given index and is not the beginning of a longer identifier.
+     * </p>
+     *
+     * @param content the content
+     * @param start the index
+     * @param word the word
+     * @return {@code true} if the word is found, {@code false} otherwise
+     */
+    private static boolean isWord(final CharSequence content, final int start, final String word) {
+        final int end = start + word.length();
+        return startsWith(content, word, start)
+                && (end == content.length() || !Character.isJavaIdentifierPart(content.charAt(end)));
+    }
+
+    /**
+     * <p>
+     * Indicates if the given region of the content equals a string.
+     * </p>
+     *
+     * @param content the content
+     * @param start the region start
+     * @param end the region end
+     * @param s the string
+     * @return {@code true} if region equals the string, {@code false} otherwise
+     */
+    private static boolean is(final CharSequence content, final int start, final int end, final String s) {
+        return end - start == s.length() && startsWith(content, s, start);
+    }
+
+    /**
+     * <p>
+     * Indicates if the content contains a string at the given index.
+     * </p>
+     *
+     * @param content the content
+     * @param s the string
+     * @param start the index
+     * @return {@code true} if the string is found, {@code false} otherwise
+     */
+    private static boolean startsWith(final CharSequence content, final String s, final int start) {
+        if (start + s.length() > content.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < s.length(); i++) {
+            if (content.charAt(start + i) != s.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * <p>
+     * Finds a string in a region of the content.
+     * </p>
+     *
+     * @param content the content
+     * @param s the string
+     * @param start the region start
+     * @param end the region end
+     * @return the index of the string, -1 if not found
+     */
+    private static int indexOf(final CharSequence content, final String s, final int start, final int end) {
+        for (int i = start; i + s.length() <= end; i++) {
+            if (startsWith(content, s, i)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,101 @@
+package com.github.gdrouet.jtester;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Tests {@link IntArrayScanner}.
+ * </p>
+ */
+public class IntArrayScannerTest {
+
+    /**
+     * <p>
+     * Parses all the elements of a string.
+     * </p>
+     *
+     * @param content the string
+     * @return the elements
+     */
+    private static int[] scan(final String content) {
+        final IntArrayScanner scanner = new IntArrayScanner().reset(content, 0, content.length());
+        final int[] retval = new int[scanner.count()];
+
+        for (int i = 0; i < retval.length; i++) {
+            retval[i] = scanner.nextInt();
+        }
+
+        Assert.assertFalse(scanner.hasNext());
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Parses the elements like {@link Integer#parseInt(String)}.
+     * </p>
+     */
+    @Test
+    public void elements() {
+        Assert.assertArrayEquals(new int[] { 1, -2, 3, 0, 7 }, scan("1, -2, 3, -0, +7"));
+        Assert.assertArrayEquals(new int[] { Integer.MIN_VALUE, Integer.MAX_VALUE },
+                scan(Integer.MIN_VALUE + ", " + Integer.MAX_VALUE));
+        Assert.assertArrayEquals(new int[0], scan(""));
+    }
+
+    /**
+     * <p>
+     * Only the given region is scanned.
+     * </p>
+     */
+    @Test
+    public void region() {
+        final String content = "[4, 5, 6]";
+        final IntArrayScanner scanner = new IntArrayScanner().reset(content, 1, content.length() - 1);
+        Assert.assertEquals(3, scanner.count());
+        Assert.assertEquals(4, scanner.nextInt());
+        Assert.assertEquals(2, scanner.count());
+        Assert.assertEquals(5, scanner.nextInt());
+        Assert.assertEquals(6, scanner.nextInt());
+        Assert.assertFalse(scanner.hasNext());
+    }
+
+    /**
+     * <p>
+     * Trailing empty elements are not counted, like {@link String#split(String)} does.
+     * </p>
+     */
+    @Test
+    public void count() {
+        Assert.assertEquals("1, 2, ".split(", ").length, new IntArrayScanner().reset("1, 2, ", 0, 6).count());
+        Assert.assertEquals(", 2".split(", ").length, new IntArrayScanner().reset(", 2", 0, 3).count());
+        Assert.assertEquals("1, , 3".split(", ").length, new IntArrayScanner().reset("1, , 3", 0, 6).count());
+    }
+
+    /**
+     * <p>
+     * Malformed and overflowing elements are rejected.
+     * </p>
+     */
+    @Test
+    public void malformed() {
+        for (final String element : new String[] { "2147483648", "-2147483649", "1,2", "-", "+", "1a", " 1" }) {
+            try {
+                new IntArrayScanner().reset(element, 0, element.length()).nextInt();
+                Assert.fail(element);
+            } catch (NumberFormatException nfe) {
+                Assert.assertEquals("For input string: \"" + element + '"', nfe.getMessage());
+            }
+        }
+
+        final IntArrayScanner scanner = new IntArrayScanner().reset("1, , 3", 0, 6);
+        Assert.assertEquals(1, scanner.nextInt());
+
+        try {
+            scanner.nextInt();
+            Assert.fail();
+        } catch (NumberFormatException nfe) {
+            Assert.assertEquals("For input string: \"\"", nfe.getMessage());
+        }
+    }
+}
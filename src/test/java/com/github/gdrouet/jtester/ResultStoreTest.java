@@ -0,0 +1,167 @@
+package com.github.gdrouet.jtester;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>
+ * Tests {@link ResultStore}.
+ * </p>
+ */
+public class ResultStoreTest {
+
+    /**
+     * The directory of the log.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * <p>
+     * Reads the content of a store.
+     * </p>
+     *
+     * @param store the store
+     * @return the result of each step associated to each student
+     */
+    private static Map<String, Map<String, String>> content(final ResultStore store) {
+        final Map<String, Map<String, String>> retval = new TreeMap<>();
+        store.forEach((student, values) -> retval.put(student, new TreeMap<>(values)));
+        return retval;
+    }
+
+    /**
+     * <p>
+     * A reopened store replays the log, a result is returned only for the hash of its inputs.
+     * </p>
+     *
+     * @throws IOException if test fails
+     */
+    @Test
+    public void replay() throws IOException {
+        final File file = folder.newFile();
+        final ResultStore store = new ResultStore(file);
+        store.put("Alice", "step1", "h1", "true");
+        store.put("Alice", "step2", "h2", "L.3");
+        store.put("Bob", "step1", "h3", "a\tb\nc");
+        store.put("Alice", "step1", "h4", "false");
+        store.close();
+
+        final ResultStore reopened = new ResultStore(file);
+        Assert.assertEquals("false", reopened.get("Alice", "step1", "h4"));
+        Assert.assertNull(reopened.get("Alice", "step1", "h1"));
+        Assert.assertEquals("L.3", reopened.get("Alice", "step2", "h2"));
+        Assert.assertEquals("a b c", reopened.get("Bob", "step1", "h3"));
+        Assert.assertNull(reopened.get("Carl", "step1", "h3"));
+        reopened.close();
+    }
+
+    /**
+     * <p>
+     * Removed results are not replayed and a student without any result is not streamed.
+     * </p>
+     *
+     * @throws IOException if test fails
+     */
+    @Test
+    public void removal() throws IOException {
+        final File file = folder.newFile();
+        final ResultStore store = new ResultStore(file);
+        store.put("Alice", "step1", "h1", "true");
+        store.put("Alice", "step2", "h2", "true");
+        store.put("Bob", "step1", "h3", "false");
+        store.put("Carl", "step1", "h4", "false");
+        store.remove("Alice", "step2");
+        store.retain("step1", new HashSet<>(Arrays.asList("Alice", "Carl")));
+        store.close();
+
+        final ResultStore reopened = new ResultStore(file);
+        Assert.assertNull(reopened.get("Alice", "step2", "h2"));
+        Assert.assertNull(reopened.get("Bob", "step1", "h3"));
+        Assert.assertEquals("{Alice={step1=true}, Carl={step1=false}}", content(reopened).toString());
+        reopened.close();
+    }
+
+    /**
+     * <p>
+     * A log whose lines are mostly superseded is compacted when opened.
+     * </p>
+     *
+     * @throws IOException if test fails
+     */
+    @Test
+    public void compaction() throws IOException {
+        final File file = folder.newFile();
+        final ResultStore store = new ResultStore(file);
+
+        for (int i = 0; i < 5; i++) {
+            store.put("Alice", "step1", "h" + i, String.valueOf(i));
+        }
+
+        store.put("Bob", "step1", "h", "true");
+        store.remove("Bob", "step1");
+        store.close();
+        Assert.assertEquals(7, Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).size());
+
+        final ResultStore reopened = new ResultStore(file);
+        Assert.assertEquals(Arrays.asList("Alice\tstep1\th4\t4"), Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+        reopened.put("Alice", "step2", "h", "true");
+        reopened.close();
+
+        final ResultStore again = new ResultStore(file);
+        Assert.assertEquals("{Alice={step1=4, step2=true}}", content(again).toString());
+        again.close();
+    }
+
+    /**
+     * <p>
+     * A line truncated by a crash is dropped, so the next line is not appended to it.
+     * </p>
+     *
+     * @throws IOException if test fails
+     */
+    @Test
+    public void tornLine() throws IOException {
+        final File file = folder.newFile();
+        final ResultStore store = new ResultStore(file);
+        store.put("Alice", "step1", "h1", "true");
+        store.close();
+        Files.write(file.toPath(), "Bob\tstep1\th2\tfal".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        final ResultStore reopened = new ResultStore(file);
+        Assert.assertNull(reopened.get("Bob", "step1", "h2"));
+        reopened.put("Carl", "step1", "h3", "false");
+        reopened.close();
+
+        final ResultStore again = new ResultStore(file);
+        Assert.assertEquals("{Alice={step1=true}, Carl={step1=false}}", content(again).toString());
+        again.close();
+    }
+
+    /**
+     * <p>
+     * The hash depends on the boundaries of the inputs.
+     * </p>
+     */
+    @Test
+    public void hash() {
+        final byte[] ab = "ab".getBytes(StandardCharsets.UTF_8);
+        final byte[] a = "a".getBytes(StandardCharsets.UTF_8);
+        final byte[] b = "b".getBytes(StandardCharsets.UTF_8);
+        Assert.assertEquals(ResultStore.hash(a, b), ResultStore.hash(a, b));
+        Assert.assertNotEquals(ResultStore.hash(ab), ResultStore.hash(a, b));
+        Assert.assertNotEquals(ResultStore.hash(ab, new byte[0]), ResultStore.hash(a, b));
+    }
+}
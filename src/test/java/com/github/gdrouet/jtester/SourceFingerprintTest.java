@@ -0,0 +1,60 @@
+package com.github.gdrouet.jtester;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Tests {@link SourceFingerprint}.
+ * </p>
+ */
+public class SourceFingerprintTest {
+
+    /**
+     * <p>
+     * Whitespace and comments don't change the fingerprint.
+     * </p>
+     */
+    @Test
+    public void layout() {
+        Assert.assertEquals(SourceFingerprint.of("Adder", "class Adder {int add(int a,int b){return a+b;}}"),
+                SourceFingerprint.of("Adder", "class Adder {\n    // Sum\n    int add(int a, int b) {\n"
+                        + "        return a + b; /* no overflow */\n    }\n}\n"));
+    }
+
+    /**
+     * <p>
+     * The class to test is part of the fingerprint.
+     * </p>
+     */
+    @Test
+    public void fileTest() {
+        Assert.assertNotEquals(SourceFingerprint.of("Adder", "class A {}"), SourceFingerprint.of("Other", "class A {}"));
+    }
+
+    /**
+     * <p>
+     * Whitespace separating two identifiers or two operators is significant.
+     * </p>
+     */
+    @Test
+    public void separators() {
+        Assert.assertNotEquals(SourceFingerprint.of("A", "int a b;"), SourceFingerprint.of("A", "int ab;"));
+        Assert.assertNotEquals(SourceFingerprint.of("A", "x = a + +b;"), SourceFingerprint.of("A", "x = a ++b;"));
+        Assert.assertNotEquals(SourceFingerprint.of("A", "x = a - -b;"), SourceFingerprint.of("A", "x = a --b;"));
+        Assert.assertNotEquals(SourceFingerprint.of("A", "x = a / /* c */ b;"), SourceFingerprint.of("A", "x = a // c\n b;"));
+        Assert.assertEquals(SourceFingerprint.of("A", "x = a+ b;"), SourceFingerprint.of("A", "x = a +b;"));
+    }
+
+    /**
+     * <p>
+     * Literals are hashed as is, including their whitespace.
+     * </p>
+     */
+    @Test
+    public void literals() {
+        Assert.assertNotEquals(SourceFingerprint.of("A", "s = \"a b\";"), SourceFingerprint.of("A", "s = \"a  b\";"));
+        Assert.assertNotEquals(SourceFingerprint.of("A", "s = \"//\";"), SourceFingerprint.of("A", "s = \"\";"));
+        Assert.assertEquals(SourceFingerprint.of("A", "d = 1.5;"), SourceFingerprint.of("A", "d =  1.5 ;"));
+    }
+}
@@ -0,0 +1,178 @@
+package com.github.gdrouet.jtester;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * Tests {@link SubmissionIndex}. Modification times are set explicitly since the file system may not distinguish
+ * changes made in the same second.
+ * </p>
+ */
+public class SubmissionIndexTest {
+
+    /**
+     * The test directory.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * The step directory.
+     */
+    private File step;
+
+    /**
+     * A time after the creation of all the files.
+     */
+    private long later;
+
+    /**
+     * <p>
+     * Creates a step with the files of two students.
+     * </p>
+     *
+     * @throws IOException if a file can't be created
+     */
+    @Before
+    public void setUp() throws IOException {
+        step = folder.newFolder("tp-step1");
+        create(step, "Smith_Alice_1_a_b_Adder.java");
+        create(step, "Jones_Bob_1_a_b_Adder.java");
+        create(step, "notes");
+        later = System.currentTimeMillis() + 10000L;
+    }
+
+    /**
+     * <p>
+     * Creates a file.
+     * </p>
+     *
+     * @param directory the directory
+     * @param name the file name
+     * @return the file
+     * @throws IOException if the file can't be created
+     */
+    private static File create(final File directory, final String name) throws IOException {
+        final File retval = new File(directory, name);
+        Files.write(retval.toPath(), "class A {}".getBytes("UTF-8"));
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Sets the modification time of a file or directory.
+     * </p>
+     *
+     * @param file the file
+     * @param millis the modification time
+     * @throws IOException if the time can't be set
+     */
+    private static void touch(final File file, final long millis) throws IOException {
+        Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(millis));
+    }
+
+    /**
+     * <p>
+     * Gets the students of a list of entries.
+     * </p>
+     *
+     * @param entries the entries
+     * @return the students
+     */
+    private static List<String> students(final List<SubmissionIndex.Entry> entries) {
+        final List<String> retval = new ArrayList<>();
+
+        for (final SubmissionIndex.Entry entry : entries) {
+            retval.add(entry.getStudent());
+        }
+
+        return retval;
+    }
+
+    /**
+     * <p>
+     * The files to test are parsed when the directory is walked, other files are ignored.
+     * </p>
+     *
+     * @throws IOException if test fails
+     */
+    @Test
+    public void walk() throws IOException {
+        final SubmissionIndex index = new SubmissionIndex(folder.getRoot());
+        final List<SubmissionIndex.Entry> entries = index.getEntries(step);
+        Assert.assertEquals("[Bob, Alice]", students(entries).toString());
+        Assert.assertEquals("Adder", entries.get(0).getFileTest());
+        Assert.assertEquals(new File(step, "Jones_Bob_1_a_b_Adder.java"), entries.get(0).getFile());
+        Assert.assertEquals(step, index.findDirectory("step1"));
+        Assert.assertNull(index.findDirectory("step2"));
+        Assert.assertTrue(index.refresh().isEmpty());
+    }
+
+    /**
+     * <p>
+     * A refresh returns the modified and added files and forgets the removed ones.
+     * </p>
+     *
+     * @throws IOException if test fails
+     */
+    @Test
+    public void refresh() throws IOException {
+        final SubmissionIndex index = new SubmissionIndex(folder.getRoot());
+
+        // Modified file, the step directory is not listed again
+        touch(new File(step, "Smith_Alice_1_a_b_Adder.java"), later);
+        Assert.assertEquals("[Alice]", students(index.refresh()).toString());
+        Assert.assertTrue(index.refresh().isEmpty());
+
+        // Added and removed files
+        create(step, "Brown_Carl_1_a_b_Adder.java");
+        Files.delete(new File(step, "Jones_Bob_1_a_b_Adder.java").toPath());
+        touch(step, later);
+        Assert.assertEquals("[Carl]", students(index.refresh()).toString());
+        Assert.assertEquals("[Carl, Alice]", students(index.getEntries(step)).toString());
+
+        // Removed file, the step directory modification time is unchanged
+        Files.delete(new File(step, "Smith_Alice_1_a_b_Adder.java").toPath());
+        touch(step, later);
+        Assert.assertTrue(index.refresh().isEmpty());
+        Assert.assertEquals("[Carl]", students(index.getEntries(step)).toString());
+    }
+
+    /**
+     * <p>
+     * A refresh discovers the added step directories and forgets the removed ones.
+     * </p>
+     *
+     * @throws IOException if test fails
+     */
+    @Test
+    public void refreshSteps() throws IOException {
+        final SubmissionIndex index = new SubmissionIndex(folder.getRoot());
+        final File added = folder.newFolder("tp-step2");
+        create(added, "Smith_Alice_1_a_b_Other.java");
+        touch(folder.getRoot(), later);
+        Assert.assertEquals("[Alice]", students(index.refresh()).toString());
+        Assert.assertEquals(added, index.findDirectory("step2"));
+
+        for (final File file : step.listFiles()) {
+            Files.delete(file.toPath());
+        }
+
+        Files.delete(step.toPath());
+        touch(folder.getRoot(), later + 1000L);
+        Assert.assertTrue(index.refresh().isEmpty());
+        Assert.assertTrue(index.getEntries(step).isEmpty());
+        Assert.assertNull(index.findDirectory("step1"));
+    }
+}
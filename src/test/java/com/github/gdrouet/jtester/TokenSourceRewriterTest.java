@@ -0,0 +1,120 @@
+package com.github.gdrouet.jtester;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Tests {@link TokenSourceRewriter}.
+ * </p>
+ */
+public class TokenSourceRewriterTest {
+
+    /**
+     * The imports extracted by the last rewrite.
+     */
+    private StringBuilder imports;
+
+    /**
+     * <p>
+     * Rewrites a file to test, renaming "Adder" to "Tested".
+     * </p>
+     *
+     * @param excludeSysout exclude System.out.println statements
+     * @param executor rewrite the file as the test executor
+     * @param content the content
+     * @return the rewritten content
+     */
+    private String rewrite(final boolean excludeSysout, final boolean executor, final String content) {
+        imports = new StringBuilder();
+        final StringBuilder retval = new StringBuilder();
+        new TokenSourceRewriter(excludeSysout).rewrite(content, executor, "Adder", "Tested", imports, retval);
+        return retval.toString();
+    }
+
+    /**
+     * <p>
+     * Removes the package declaration, extracts the java.* imports and drops the others.
+     * </p>
+     */
+    @Test
+    public void packageAndImports() {
+        Assert.assertEquals("\n\n\nclass Tested {\n}\n",
+                rewrite(false, false, "package student;\nimport java.util.List;\nimport org.junit.Test;\npublic class Adder {\n}\n"));
+        Assert.assertEquals("import java.util.List;", imports.toString());
+    }
+
+    /**
+     * <p>
+     * Types become package private except in the test executor, other public members are kept.
+     * </p>
+     */
+    @Test
+    public void publicTypes() {
+        Assert.assertEquals("interface I {}\nclass Tested { public static int publicity; }",
+                rewrite(false, false, "public interface I {}\npublic class Adder { public static int publicity; }"));
+        Assert.assertEquals("public class Main {}", rewrite(false, true, "public class Main {}"));
+    }
+
+    /**
+     * <p>
+     * Removes the whole System.out.println statement, including literals and nested parentheses, unless in the
+     * test executor or not requested.
+     * </p>
+     */
+    @Test
+    public void sysout() {
+        final String content = "int a() { System.out.println(\"x);\" + f(')')); return 1; }";
+        Assert.assertEquals("int a() {  return 1; }", rewrite(true, false, content));
+        Assert.assertEquals(content, rewrite(true, true, content));
+        Assert.assertEquals(content, rewrite(false, false, content));
+    }
+
+    /**
+     * <p>
+     * Comments and literals are copied as is.
+     * </p>
+     */
+    @Test
+    public void commentsAndLiterals() {
+        final String content = "// package x; public class Adder\n"
+                + "/* import java.util.List; System.out.println(1); */\n"
+                + "String s = \"public class Adder \\\" package\";\n"
+                + "char c = '\"';\n"
+                + "char d = '\\'';\n";
+        Assert.assertEquals(content, rewrite(true, false, content));
+        Assert.assertEquals("", imports.toString());
+    }
+
+    /**
+     * <p>
+     * Text blocks are copied as is, even when they contain quotes or statements.
+     * </p>
+     */
+    @Test
+    public void textBlocks() {
+        final String block = "String s = \"\"\"\n    System.out.println(\"Adder\");\n    \\\"\"\" package\n    \"\"\";\n";
+        Assert.assertEquals(block + "\nTested t;", rewrite(true, false, block + "System.out.println(s);\nAdder t;"));
+    }
+
+    /**
+     * <p>
+     * Numeric literals are not identifiers.
+     * </p>
+     */
+    @Test
+    public void numbers() {
+        Assert.assertEquals("long l = 1L + 0x1Fl + 1.5e3d;", rewrite(false, false, "long l = 1L + 0x1Fl + 1.5e3d;"));
+    }
+
+    /**
+     * <p>
+     * An unterminated comment or literal ends the content.
+     * </p>
+     */
+    @Test
+    public void unterminated() {
+        Assert.assertEquals("int a; /* public class Adder", rewrite(true, false, "int a; /* public class Adder"));
+        Assert.assertEquals("int a; \"\"\" Adder", rewrite(true, false, "int a; \"\"\" Adder"));
+    }
+}